@@ -0,0 +1,150 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates a synthetic photo library: a tree of directories of a given depth
+ * and width holding NEF and JPEG pictures with Exif dates, MP4 and MOV movies
+ * with {@code mvhd} boxes, NKSC_PARAM sidecars of NEF pictures, bursts of
+ * pictures taken in the same second and pictures named properly already.
+ * <p>
+ * A library is the same for the same arguments and seed.
+ */
+public final class LibraryGenerator {
+  private static final long NEF_SIZE = 25L * 1024 * 1024;
+  private static final long MDAT_SIZE = 200L * 1024 * 1024;
+  private static final long FIRST_DATE = 1420070400000L;
+  private static final int BURST_SIZE = 8;
+  private static final int BURST_PERCENT = 10;
+  private static final int RENAMED_PERCENT = 5;
+  private static final int SIDECAR_PERCENT = 70;
+  private final int files;
+  private final int depth;
+  private final int width;
+  private final long seed;
+
+  /**
+  * @param files a number of pictures to generate.
+  * @param depth a depth of the directory tree, 0 puts all the pictures in the root.
+  * @param width a number of subdirectories of every directory but the deepest.
+  * @param seed a seed of random types, dates and names.
+  */
+  public LibraryGenerator(int files, int depth, int width, long seed) {
+    this.files = files;
+    this.depth = depth;
+    this.width = width;
+    this.seed = seed;
+  }
+
+  /**
+  * Generates the library in a directory.
+  * @param root a directory to generate the library in, created if it does not exist.
+  * @return a number of pictures generated.
+  */
+  public int generate(File root) throws IOException {
+    List<File> dirs = new ArrayList<>();
+    addDirs(root, depth, dirs);
+    for (File dir : dirs) {
+      if (! dir.isDirectory() && ! dir.mkdirs()) {
+        throw new IOException(String.format("Cannot create directory %s", dir));
+      }
+    }
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
+    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+    Random random = new Random(seed);
+    long date = FIRST_DATE;
+    File dir = root;
+    int burst = 0;
+    for (int i = 0; i < files; i++) {
+      boolean renamed = false;
+      if (burst > 0) {
+        burst--;
+      } else {
+        dir = dirs.get(random.nextInt(dirs.size()));
+        date += 1000L * (1 + random.nextInt(3600));
+        if (random.nextInt(100) < BURST_PERCENT) {
+          burst = BURST_SIZE - 1;
+        } else {
+          renamed = random.nextInt(100) < RENAMED_PERCENT;
+        }
+      }
+      Date dateTaken = new Date(date);
+      String baseName = renamed ? sdf.format(dateTaken) : String.format("DSC_%07d", i);
+      int type = random.nextInt(100);
+      if (type < 55) {
+        File nef = new File(dir, baseName + ".NEF");
+        SampleFiles.writeNef(nef, dateTaken, NEF_SIZE);
+        if (random.nextInt(100) < SIDECAR_PERCENT) {
+          File sidecarDir = new File(dir, "NKSC_PARAM");
+          sidecarDir.mkdir();
+          SampleFiles.writeNef(new File(sidecarDir, nef.getName() + ".nksc"), dateTaken, 0);
+        }
+      } else if (type < 85) {
+        SampleFiles.writeJpeg(new File(dir, baseName + ".jpg"), dateTaken);
+      } else if (type < 95) {
+        SampleFiles.writeMp4(new File(dir, baseName + ".mp4"), dateTaken, MDAT_SIZE,
+            random.nextBoolean());
+      } else {
+        SampleFiles.writeMov(new File(dir, baseName + ".mov"), dateTaken, MDAT_SIZE,
+            random.nextBoolean());
+      }
+    }
+    return files;
+  }
+
+  private void addDirs(File dir, int levels, List<File> dirs) {
+    dirs.add(dir);
+    if (levels > 0) {
+      for (int i = 0; i < width; i++) {
+        addDirs(new File(dir, String.format("d%02d", i)), levels - 1, dirs);
+      }
+    }
+  }
+
+  /**
+  * Generates a library: {@code ROOT FILES [DEPTH [WIDTH [SEED]]]}.
+  */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: LibraryGenerator ROOT FILES [DEPTH [WIDTH [SEED]]]");
+      System.exit(1);
+    }
+    LibraryGenerator generator = new LibraryGenerator(Integer.parseInt(args[1]),
+        args.length > 2 ? Integer.parseInt(args[2]) : 3,
+        args.length > 3 ? Integer.parseInt(args[3]) : 8,
+        args.length > 4 ? Long.parseLong(args[4]) : 0);
+    System.out.println(String.format("Generated %s pictures in %s",
+        generator.generate(new File(args[0])), args[0]));
+  }
+}
@@ -0,0 +1,98 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import com.drew.imaging.ImageProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks of {@link PictureFactory#getPicture(File)} for every picture
+ * type and of the extension dispatch alone.
+ */
+public class PictureFactoryBenchmark extends SampleBenchmark {
+  private File cacheFile;
+  private MetadataCache cache;
+
+  @Override
+  protected void setUpBenchmark() throws IOException {
+    cacheFile = new File(dir, "metadata.cache");
+    cache = new MetadataCache(cacheFile);
+    try {
+      PictureFactory.getPicture(nef, cache);
+    } catch (ImageProcessingException | NotImageFileException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  protected void tearDownBenchmark() throws IOException {
+    cache.close();
+  }
+
+  @Benchmark
+  public Picture dispatchUnrecognized()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(text);
+  }
+
+  @Benchmark
+  public Picture getPictureJpeg()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(jpeg);
+  }
+
+  @Benchmark
+  public Picture getPictureNef()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(nef);
+  }
+
+  @Benchmark
+  public Picture getPictureNefCached()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(nef, cache);
+  }
+
+  @Benchmark
+  public Picture getPictureMp4()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(mp4);
+  }
+
+  @Benchmark
+  public Picture getPictureMov()
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    return PictureFactory.getPicture(mov);
+  }
+}
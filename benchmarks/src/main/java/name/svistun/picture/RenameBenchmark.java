@@ -0,0 +1,118 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of making up new names: date formatting and collision probing
+ * for a burst of pictures taken in the same second, both through the name
+ * index and by probing the file system for every suffix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenameBenchmark {
+  private static final String EXT = ".jpg";
+  @Param({"40"})
+  public int burst;
+  @Param({"1000"})
+  public int dirSize;
+  private File dir;
+  private DirectoryHandles handles;
+  private SimpleDateFormat sdf;
+  private String baseName;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    sdf = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
+    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+    baseName = sdf.format(SampleBenchmark.DATE_TAKEN);
+    dir = java.nio.file.Files.createTempDirectory("picture-rename-bench").toFile();
+    for (int i = 0; i < dirSize; i++) {
+      String name = i < burst
+          ? (i == 0 ? baseName : String.format("%s_%s", baseName, i)) + EXT
+          : String.format("DSC_%05d%s", i, EXT);
+      new File(dir, name).createNewFile();
+    }
+    handles = new DirectoryHandles();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    handles.close();
+    SampleFiles.delete(dir.toPath());
+  }
+
+  @Benchmark
+  public String formatDate() {
+    return sdf.format(SampleBenchmark.DATE_TAKEN);
+  }
+
+  @Benchmark
+  public String reserveWithNameIndex() throws IOException {
+    NameIndex names = new NameIndex(handles);
+    String[] newNames = null;
+    for (int i = 0; i < burst; i++) {
+      newNames = names.reserve(baseName, new File[] {dir}, new String[] {EXT});
+    }
+    return newNames[0];
+  }
+
+  @Benchmark
+  public File probeFileSystem() {
+    File newFile = null;
+    for (int i = 0; i < burst; i++) {
+      newFile = new File(dir, baseName + EXT);
+      int count = 0;
+      while (newFile.exists()) {
+        count++;
+        newFile = new File(dir, String.format("%s_%s%s", baseName, count, EXT));
+      }
+    }
+    return newFile;
+  }
+}
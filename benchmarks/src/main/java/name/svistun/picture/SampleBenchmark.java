@@ -0,0 +1,117 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sample pictures of every type shared by the benchmarks.
+ * <p>
+ * Samples are generated in a temporary directory unless {@code sampleDir}
+ * points to a directory with real {@code sample.jpg}, {@code sample.nef},
+ * {@code sample.mp4} and {@code sample.mov} files. The temporary directory
+ * is deleted after the trial. Generated NEF and movie
+ * files are padded to camera sizes and movies store their {@code moov} box
+ * after the media data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class SampleBenchmark {
+  public static final Date DATE_TAKEN = new Date(1614834367000L);
+  private static final long NEF_SIZE = 30L * 1024 * 1024;
+  private static final long MDAT_SIZE = 1024L * 1024 * 1024;
+  @Param("")
+  public String sampleDir;
+  protected File dir;
+  protected File jpeg;
+  protected File nef;
+  protected File mp4;
+  protected File mov;
+  protected File text;
+
+  @Setup(Level.Trial)
+  public void setUpSamples() throws IOException {
+    dir = Files.createTempDirectory("picture-rename-bench").toFile();
+    text = new File(dir, "readme.txt");
+    Files.write(text.toPath(), new byte[] {'x'});
+    if (sampleDir.isEmpty()) {
+      jpeg = new File(dir, "sample.jpg");
+      nef = new File(dir, "sample.nef");
+      mp4 = new File(dir, "sample.mp4");
+      mov = new File(dir, "sample.mov");
+      SampleFiles.writeJpeg(jpeg, DATE_TAKEN);
+      SampleFiles.writeNef(nef, DATE_TAKEN, NEF_SIZE);
+      SampleFiles.writeMp4(mp4, DATE_TAKEN, MDAT_SIZE, false);
+      SampleFiles.writeMov(mov, DATE_TAKEN, MDAT_SIZE, false);
+    } else {
+      jpeg = new File(sampleDir, "sample.jpg");
+      nef = new File(sampleDir, "sample.nef");
+      mp4 = new File(sampleDir, "sample.mp4");
+      mov = new File(sampleDir, "sample.mov");
+    }
+    setUpBenchmark();
+  }
+
+  /**
+  * Prepares a benchmark once the samples are ready. JMH does not order
+  * setup methods, so benchmarks override this instead of adding their own.
+  */
+  protected void setUpBenchmark() throws IOException {}
+
+  @TearDown(Level.Trial)
+  public void tearDownSamples() throws IOException {
+    try {
+      tearDownBenchmark();
+    } finally {
+      SampleFiles.delete(dir.toPath());
+    }
+  }
+
+  /**
+  * Releases what a benchmark has set up before the samples are deleted.
+  */
+  protected void tearDownBenchmark() throws IOException {}
+}
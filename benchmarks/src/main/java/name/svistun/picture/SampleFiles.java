@@ -0,0 +1,188 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes minimal, well-formed picture files with a given date taken.
+ * <p>
+ * JPEG and NEF files carry an Exif SubIFD with DateTimeOriginal, MP4 and MOV
+ * files carry a {@code moov/mvhd} box. Files can be padded to a realistic
+ * size, padding is written sparse where the file system allows it.
+ */
+public final class SampleFiles {
+  private static final long EPOCH_OFFSET = 2082844800L;
+  private static final int MVHD_V0_SIZE = 8 + 100;
+
+  private SampleFiles() {}
+
+  public static void writeJpeg(File file, Date dateTaken) throws IOException {
+    byte[] tiff = tiff(dateTaken, ByteOrder.BIG_ENDIAN);
+    ByteBuffer buffer = ByteBuffer.allocate(2 + 4 + 6 + tiff.length + 4 + 2);
+    buffer.putShort((short) 0xFFD8);
+    buffer.putShort((short) 0xFFE1);
+    buffer.putShort((short) (2 + 6 + tiff.length));
+    buffer.put("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+    buffer.put(tiff);
+    buffer.putShort((short) 0xFFDA);
+    buffer.putShort((short) 2);
+    buffer.putShort((short) 0xFFD9);
+    write(file, buffer.array(), 0);
+  }
+
+  public static void writeNef(File file, Date dateTaken, long size) throws IOException {
+    write(file, tiff(dateTaken, ByteOrder.LITTLE_ENDIAN), size);
+  }
+
+  /**
+  * @param mdatSize a size of the media data box.
+  * @param moovFirst true to put the movie box before the media data box.
+  */
+  public static void writeMp4(File file, Date dateTaken, long mdatSize, boolean moovFirst)
+      throws IOException
+  {
+    writeMovie(file, "isom", dateTaken, mdatSize, moovFirst);
+  }
+
+  /**
+  * @param mdatSize a size of the media data box.
+  * @param moovFirst true to put the movie box before the media data box.
+  */
+  public static void writeMov(File file, Date dateTaken, long mdatSize, boolean moovFirst)
+      throws IOException
+  {
+    writeMovie(file, "qt  ", dateTaken, mdatSize, moovFirst);
+  }
+
+  private static void writeMovie(File file,
+      String brand,
+      Date dateTaken,
+      long mdatSize,
+      boolean moovFirst)
+      throws IOException
+  {
+    ByteBuffer ftyp = ByteBuffer.allocate(16);
+    ftyp.putInt(16).put(ascii("ftyp")).put(ascii(brand)).putInt(0);
+    ByteBuffer moov = ByteBuffer.allocate(8 + MVHD_V0_SIZE);
+    long creationTime = dateTaken.getTime() / 1000 + EPOCH_OFFSET;
+    moov.putInt(8 + MVHD_V0_SIZE).put(ascii("moov"));
+    moov.putInt(MVHD_V0_SIZE).put(ascii("mvhd"));
+    moov.putInt(0);
+    moov.putInt((int) creationTime);
+    moov.putInt((int) creationTime);
+    moov.putInt(1000);
+    moov.putInt(1000);
+    moov.putInt(0x00010000);
+    moov.putShort((short) 0x0100);
+    moov.position(moov.position() + 10);
+    int[] matrix = {0x00010000, 0, 0, 0, 0x00010000, 0, 0, 0, 0x40000000};
+    for (int value : matrix) {
+      moov.putInt(value);
+    }
+    moov.position(moov.position() + 24);
+    moov.putInt(2);
+    long mdatTotal = 16 + mdatSize;
+    ByteBuffer mdatHeader = ByteBuffer.allocate(16);
+    mdatHeader.putInt(1).put(ascii("mdat")).putLong(mdatTotal);
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      out.write(ftyp.array());
+      if (moovFirst) {
+        out.write(moov.array());
+      }
+      out.write(mdatHeader.array());
+      out.setLength(out.getFilePointer() + mdatSize);
+      out.seek(out.length());
+      if (! moovFirst) {
+        out.write(moov.array());
+      }
+    }
+  }
+
+  /**
+  * @return a TIFF structure of IFD0 pointing to an Exif SubIFD with the date.
+  */
+  private static byte[] tiff(Date dateTaken, ByteOrder order) {
+    SimpleDateFormat sdf = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+    byte[] date = (sdf.format(dateTaken) + "\0").getBytes(StandardCharsets.US_ASCII);
+    int ifd0 = 8;
+    int exifIfd = ifd0 + 2 + 12 + 4;
+    int dateOffset = exifIfd + 2 + 12 + 4;
+    ByteBuffer buffer = ByteBuffer.allocate(dateOffset + date.length).order(order);
+    buffer.put(order == ByteOrder.LITTLE_ENDIAN ? ascii("II") : ascii("MM"));
+    buffer.putShort((short) 42).putInt(ifd0);
+    buffer.putShort((short) 1);
+    buffer.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+    buffer.putInt(0);
+    buffer.putShort((short) 1);
+    buffer.putShort((short) 0x9003).putShort((short) 2).putInt(date.length).putInt(dateOffset);
+    buffer.putInt(0);
+    buffer.put(date);
+    return buffer.array();
+  }
+
+  /**
+  * Deletes a file or a directory of samples along with its content, links
+  * are deleted rather than followed.
+  */
+  public static void delete(Path path) throws IOException {
+    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+        for (Path child : children) {
+          delete(child);
+        }
+      }
+    }
+    Files.deleteIfExists(path);
+  }
+
+  private static void write(File file, byte[] content, long size) throws IOException {
+    try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+      out.setLength(0);
+      out.write(content);
+      if (size > content.length) {
+        out.setLength(size);
+      }
+    }
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,202 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.type.SidecarIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Runs {@link PictureManager#execute(CliOptions)} over synthetic libraries
+ * and reports files per second, peak resident memory and read and write
+ * system calls of every run.
+ * <p>
+ * Every run generates a fresh library first, the generation is not measured.
+ * The library is generated in a directory of ROOT, ROOT is marked as a root
+ * of generated libraries and a ROOT of other files is refused, so that no
+ * files of the user are deleted. Runs use a metadata cache of their own, the
+ * cache of the user is not touched.
+ * Peak resident memory and system calls are read from {@code /proc/self} on
+ * Linux and reported as -1 elsewhere. Peak resident memory is reset before
+ * every run where the kernel allows it. Output of renames is discarded
+ * unless {@code -Dbench.verbose=true} is set.
+ */
+public final class ThroughputRun {
+  private static final String PROC_STATUS = "/proc/self/status";
+  private static final String PROC_IO = "/proc/self/io";
+  private static final String PROC_CLEAR_REFS = "/proc/self/clear_refs";
+  private static final String MARKER = ".throughput-run";
+  private static final String LIBRARY = "library";
+
+  private ThroughputRun() {}
+
+  /**
+  * Runs: {@code ROOT FILES RUNS [PROGRAM_ARGS...]}, a library of FILES
+  * pictures is generated in ROOT and the program is run over it with
+  * PROGRAM_ARGS, RUNS times.
+  */
+  public static void main(String[] args) throws IOException, ParseException {
+    if (args.length < 3) {
+      System.err.println("Usage: ThroughputRun ROOT FILES RUNS [PROGRAM_ARGS...]");
+      System.exit(1);
+    }
+    File root = new File(args[0]);
+    int files = Integer.parseInt(args[1]);
+    int runs = Integer.parseInt(args[2]);
+    File marker = new File(root, MARKER);
+    String[] names = root.list();
+    if (null != names && names.length > 0 && ! marker.isFile()) {
+      System.err.println(String.format(
+          "%s has files which were not generated by ThroughputRun, give an empty directory.",
+          root.getAbsolutePath()));
+      System.exit(1);
+    }
+    root.mkdirs();
+    Files.write(marker.toPath(), new byte[0]);
+    File library = new File(root, LIBRARY);
+    library.mkdirs();
+    // the cache file is in the home directory, the property is read once options are parsed
+    Path home = Files.createTempDirectory("throughput-run");
+    System.setProperty("user.home", home.toString());
+    String[] programArgs = Arrays.copyOfRange(args, 3, args.length + 1);
+    programArgs[programArgs.length - 1] = library.getPath();
+    PrintStream out = System.out;
+    try {
+      CliOptions cliOptions = new CliOptions(programArgs);
+      for (int run = 1; run <= runs; run++) {
+        run(cliOptions, library, files, run, out);
+      }
+    } finally {
+      delete(home);
+    }
+  }
+
+  private static void run(CliOptions cliOptions,
+      File library,
+      int files,
+      int run,
+      PrintStream out)
+      throws IOException
+  {
+    delete(library.toPath());
+    new LibraryGenerator(files, 3, 8, run).generate(library);
+    // sidecar listings of the previous run are of files which have gone
+    SidecarIndex.configure(cliOptions.getSidecars());
+    resetPeakRss();
+    Map<String, Long> ioBefore = readProc(PROC_IO);
+    long start = System.nanoTime();
+    if (! Boolean.getBoolean("bench.verbose")) {
+      System.setOut(new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+      }));
+    }
+    try {
+      new PictureManager(cliOptions.getDateFormat(), cliOptions.getThreads(),
+          cliOptions.isVirtualThreads())
+          .execute(cliOptions);
+    } finally {
+      System.setOut(out);
+    }
+    long nanos = System.nanoTime() - start;
+    Map<String, Long> ioAfter = readProc(PROC_IO);
+    out.println(String.format(
+        "run %s: %s files in %.3f s, %.1f files/s, peak RSS %s kB, "
+        + "read syscalls %s, write syscalls %s",
+        run, files, nanos / 1e9, files * 1e9 / nanos,
+        value(readProc(PROC_STATUS), "VmHWM"),
+        delta(ioBefore, ioAfter, "syscr"), delta(ioBefore, ioAfter, "syscw")));
+  }
+
+  private static void resetPeakRss() {
+    try (OutputStream os = new FileOutputStream(PROC_CLEAR_REFS)) {
+      os.write('5');
+    } catch (IOException ex) {
+      // Not Linux or an old kernel: the peak is since the start of the JVM.
+    }
+  }
+
+  private static Map<String, Long> readProc(String path) {
+    Map<String, Long> values = new HashMap<>();
+    Path file = Paths.get(path);
+    if (! Files.isReadable(file)) {
+      return values;
+    }
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+        String[] keyValue = line.split(":\\s*", 2);
+        if (keyValue.length == 2) {
+          String value = keyValue[1].replaceAll("\\s*kB$", "");
+          if (value.matches("\\d+")) {
+            values.put(keyValue[0], Long.parseLong(value));
+          }
+        }
+      }
+    } catch (IOException ex) {
+      values.clear();
+    }
+    return values;
+  }
+
+  private static long value(Map<String, Long> values, String key) {
+    Long value = values.get(key);
+    return null == value ? -1 : value;
+  }
+
+  private static long delta(Map<String, Long> before, Map<String, Long> after, String key) {
+    return before.containsKey(key) && after.containsKey(key)
+        ? after.get(key) - before.get(key)
+        : -1;
+  }
+
+  private static void delete(Path path) throws IOException {
+    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+        for (Path child : children) {
+          delete(child);
+        }
+      }
+    }
+    Files.deleteIfExists(path);
+  }
+}
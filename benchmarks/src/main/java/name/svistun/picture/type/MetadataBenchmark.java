@@ -0,0 +1,82 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.SampleBenchmark;
+
+import java.io.IOException;
+import java.util.Date;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.Metadata;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks of reading the date taken of every picture type, both on the
+ * fast path and by the full metadata parsing it falls back to.
+ */
+public class MetadataBenchmark extends SampleBenchmark {
+
+  @Benchmark
+  public Date exifJpeg() throws IOException {
+    return ExifDateReader.readDateTimeOriginal(jpeg).getDate();
+  }
+
+  @Benchmark
+  public Date exifNef() throws IOException {
+    return ExifDateReader.readDateTimeOriginal(nef).getDate();
+  }
+
+  @Benchmark
+  public Date quickTimeMp4() throws IOException {
+    return QuickTimeDateReader.readCreationTime(mp4);
+  }
+
+  @Benchmark
+  public Date quickTimeMov() throws IOException {
+    return QuickTimeDateReader.readCreationTime(mov);
+  }
+
+  @Benchmark
+  public Metadata metadataReaderJpeg() throws IOException, ImageProcessingException {
+    return ImageMetadataReader.readMetadata(jpeg);
+  }
+
+  @Benchmark
+  public Metadata metadataReaderNef() throws IOException, ImageProcessingException {
+    return ImageMetadataReader.readMetadata(nef);
+  }
+
+  @Benchmark
+  public Metadata metadataReaderMp4() throws IOException, ImageProcessingException {
+    return ImageMetadataReader.readMetadata(mp4);
+  }
+
+  @Benchmark
+  public Metadata metadataReaderMov() throws IOException, ImageProcessingException {
+    return ImageMetadataReader.readMetadata(mov);
+  }
+}
@@ -0,0 +1,95 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.SampleFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of matching a photo with its NKSC_PARAM sidecar in a directory
+ * of photos which all have sidecars, both with the directory listed already
+ * and with the listing included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SidecarIndexBenchmark {
+  @Param({"100", "1000"})
+  public int photos;
+  private File dir;
+  private String photoName;
+  private String photoBaseName;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("picture-rename-bench").toFile();
+    File sidecarDir = new File(dir, "NKSC_PARAM");
+    sidecarDir.mkdir();
+    for (int i = 0; i < photos; i++) {
+      String baseName = String.format("DSC_%05d", i);
+      new File(dir, baseName + ".NEF").createNewFile();
+      new File(sidecarDir, baseName + ".NEF.nksc").createNewFile();
+    }
+    photoBaseName = String.format("DSC_%05d", photos / 2);
+    photoName = photoBaseName + ".NEF";
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    SampleFiles.delete(dir.toPath());
+  }
+
+  @Benchmark
+  public SidecarIndex.Sidecar findListed() throws IOException {
+    return SidecarIndex.forDirectory(dir).find(photoName, photoBaseName);
+  }
+
+  @Benchmark
+  public SidecarIndex.Sidecar findWithListing() throws IOException {
+    SidecarIndex.invalidate(dir);
+    return SidecarIndex.forDirectory(dir).find(photoName, photoBaseName);
+  }
+}
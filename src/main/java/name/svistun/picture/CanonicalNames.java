@@ -0,0 +1,170 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Names pictures are given by a date format, recognized without reading the
+ * pictures.
+ * <p>
+ * The date format is compiled into a pattern of {@code date[_N].ext} names,
+ * numbers of a date match digits of their widths and texts match letters.
+ * A picture of such a name is most likely renamed by a previous run, so its
+ * metadata is not read unless it is picked to verify the name.
+ */
+final class CanonicalNames {
+  private final Pattern pattern;
+  private final double verifySample;
+
+  /**
+  * @param dateFormat a date format of {@link java.text.SimpleDateFormat}.
+  * @param verifySample a fraction of pictures of canonical names which are
+  *     read anyway to verify their names, from 0 to 1.
+  */
+  CanonicalNames(String dateFormat, double verifySample) {
+    this.pattern = compile(dateFormat);
+    this.verifySample = verifySample;
+  }
+
+  /**
+  * @return true if the name is a date of the format with an optional
+  *     {@code _N} suffix and an extension.
+  */
+  boolean matches(String name) {
+    return pattern.matcher(name).matches();
+  }
+
+  /**
+  * @return true if the file is a picture of a canonical name which is left
+  *     without reading it, false if it is to be read.
+  */
+  boolean skips(File file) {
+    String name = file.getName();
+    if (null == MediaTypes.forName(name) || ! matches(name)) {
+      return false;
+    }
+    return verifySample <= 0 || ThreadLocalRandom.current().nextDouble() >= verifySample;
+  }
+
+  /**
+  * @return a pattern of names of the date format.
+  */
+  static Pattern compile(String dateFormat) {
+    StringBuilder regex = new StringBuilder("(?:");
+    int i = 0;
+    while (i < dateFormat.length()) {
+      char c = dateFormat.charAt(i);
+      if (c == '\'') {
+        StringBuilder text = new StringBuilder();
+        if (i + 1 < dateFormat.length() && dateFormat.charAt(i + 1) == '\'') {
+          // '' is a quote out of quoted text
+          text.append('\'');
+          i += 2;
+        } else {
+          i++;
+          while (i < dateFormat.length()) {
+            if (dateFormat.charAt(i) != '\'') {
+              text.append(dateFormat.charAt(i++));
+            } else if (i + 1 < dateFormat.length() && dateFormat.charAt(i + 1) == '\'') {
+              text.append('\'');
+              i += 2;
+            } else {
+              i++;
+              break;
+            }
+          }
+        }
+        regex.append(Pattern.quote(text.toString()));
+      } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        int count = 1;
+        while (i + count < dateFormat.length() && dateFormat.charAt(i + count) == c) {
+          count++;
+        }
+        regex.append(field(c, count));
+        i += count;
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+        i++;
+      }
+    }
+    return Pattern.compile(regex.append(")(?:_[1-9][0-9]*)?\\.[^.]+").toString());
+  }
+
+  /**
+  * @param letter a pattern letter of the date format.
+  * @param count a number of the letters in a row.
+  * @return a regular expression of the field.
+  */
+  private static String field(char letter, int count) {
+    switch (letter) {
+      case 'y':
+      case 'Y':
+        return count == 2 ? "\\d{2}" : digits(count, 4);
+      case 'M':
+      case 'L':
+        return count >= 3 ? "[\\p{L}.]+" : digits(count, 2);
+      case 'd':
+      case 'H':
+      case 'k':
+      case 'K':
+      case 'h':
+      case 'm':
+      case 's':
+      case 'w':
+        return digits(count, 2);
+      case 'S':
+      case 'D':
+        return digits(count, 3);
+      case 'W':
+      case 'F':
+      case 'u':
+        return digits(count, 1);
+      case 'E':
+      case 'a':
+      case 'G':
+        return "[\\p{L}.]+";
+      case 'z':
+        return "[\\p{L} ]+(?:[+-]\\d{2}:\\d{2})?";
+      case 'Z':
+        return "[+-]\\d{4}";
+      case 'X':
+        return count == 1 ? "(?:Z|[+-]\\d{2})"
+            : count == 2 ? "(?:Z|[+-]\\d{4})"
+            : "(?:Z|[+-]\\d{2}:\\d{2})";
+      default:
+        return ".+?";
+    }
+  }
+
+  /**
+  * @return a regular expression of a number padded to the count of digits.
+  */
+  private static String digits(int count, int width) {
+    return String.format("\\d{%s,%s}", count, Math.max(count, width));
+  }
+}
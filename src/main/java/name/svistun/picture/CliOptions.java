@@ -24,8 +24,12 @@ package name.svistun.picture;
  * SOFTWARE.
  */
 
+import name.svistun.picture.type.SidecarIndex;
+
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.cli.CommandLine;
@@ -35,17 +39,41 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang3.StringUtils;
 
 public final class CliOptions {
   private static final String DATE_FORMAT_NAME = "date-format";
   private static final String MAX_DEPTH_NAME = "max-depth";
   private static final String DRY_RUN_NAME = "dry-run";
+  private static final String THREADS_NAME = "threads";
+  private static final String VIRTUAL_THREADS_NAME = "virtual-threads";
+  private static final String SIDECARS_NAME = "sidecars";
+  private static final String SNIFF_NAME = "sniff";
+  private static final String OPTIONAL_EXTENSIONS_NAME = "optional-extensions";
+  private static final String DUPLICATES_NAME = "duplicates";
+  private static final String VERIFY_SAMPLE_NAME = "verify-sample";
+  private static final String SHARDS_NAME = "shards";
+  private static final String SHARD_FILE_NAME = "shard-file";
+  private static final String NO_CACHE_NAME = "no-cache";
+  private static final String WRITE_PLAN_NAME = "write-plan";
+  private static final String APPLY_PLAN_NAME = "apply-plan";
+  private static final String JOURNAL_NAME = "journal";
+  private static final String RESUME_NAME = "resume";
+  private static final String UNDO_NAME = "undo";
+  private static final String WATCH_NAME = "watch";
+  private static final String PROGRESS_NAME = "progress";
+  private static final String METRICS_NAME = "metrics";
+  private static final String QUIET_NAME = "quiet";
+  private static final String VERBOSE_NAME = "verbose";
+  private static final String OUTPUT_FORMAT_NAME = "output-format";
   private static final String PICTURE_DIR_PATHS_NAME = "PICTURE_DIR_PATHS";
   private static final String HELP_NAME = "help";
   private static final String DATE_FORMAT_DEFAULT = "yyyyMMdd'T'HHmmss";
+  private static final int VIRTUAL_THREADS_IN_FLIGHT_DEFAULT = 256;
   private static final int CLI_LINE_LENGTH = 83;
   private Map<String, Object> parsedArgs;
   private Options options;
+  private CommandLine commandLine;
 
   public CliOptions(String[] args) throws ParseException {
     parseArgs(args);
@@ -74,6 +102,144 @@ public final class CliOptions {
     return (boolean) parsedArgs.get(DRY_RUN_NAME);
   }
 
+  public int getThreads() {
+    return (int) parsedArgs.get(THREADS_NAME);
+  }
+
+  public boolean isVirtualThreads() {
+    return (boolean) parsedArgs.get(VIRTUAL_THREADS_NAME);
+  }
+
+  public String getWritePlanPath() {
+    return (String) parsedArgs.get(WRITE_PLAN_NAME);
+  }
+
+  public String getApplyPlanPath() {
+    return (String) parsedArgs.get(APPLY_PLAN_NAME);
+  }
+
+  public String getJournalPath() {
+    return (String) parsedArgs.get(JOURNAL_NAME);
+  }
+
+  public boolean isResume() {
+    return (boolean) parsedArgs.get(RESUME_NAME);
+  }
+
+  public String getUndoPath() {
+    return (String) parsedArgs.get(UNDO_NAME);
+  }
+
+  public boolean isWatch() {
+    return (boolean) parsedArgs.get(WATCH_NAME);
+  }
+
+  /**
+  * @return a period of progress lines in seconds, 0 if progress is not printed.
+  */
+  public int getProgressPeriod() {
+    return (int) parsedArgs.get(PROGRESS_NAME);
+  }
+
+  public String getMetricsPath() {
+    return (String) parsedArgs.get(METRICS_NAME);
+  }
+
+  public Output.Verbosity getVerbosity() {
+    if ((boolean) parsedArgs.get(QUIET_NAME)) {
+      return Output.Verbosity.QUIET;
+    }
+    return (boolean) parsedArgs.get(VERBOSE_NAME)
+        ? Output.Verbosity.VERBOSE
+        : Output.Verbosity.NORMAL;
+  }
+
+  /**
+  * @return a format of the output lines or null if the format is unknown.
+  */
+  public Output.Format getOutputFormat() {
+    String outputFormat = (String) parsedArgs.get(OUTPUT_FORMAT_NAME);
+    for (Output.Format format : Output.Format.values()) {
+      if (format.name().equalsIgnoreCase(outputFormat)) {
+        return format;
+      }
+    }
+    return null;
+  }
+
+  /**
+  * @return a policy for copies of pictures, null if copies are not looked
+  *     for or the policy is unknown.
+  */
+  public DuplicateFinder.Policy getDuplicates() {
+    String duplicates = (String) parsedArgs.get(DUPLICATES_NAME);
+    for (DuplicateFinder.Policy policy : DuplicateFinder.Policy.values()) {
+      if (policy.name().equalsIgnoreCase(duplicates)) {
+        return policy;
+      }
+    }
+    return null;
+  }
+
+  public boolean isNoCache() {
+    return (boolean) parsedArgs.get(NO_CACHE_NAME);
+  }
+
+  public boolean isSniff() {
+    return (boolean) parsedArgs.get(SNIFF_NAME);
+  }
+
+  public boolean isOptionalExtensions() {
+    return (boolean) parsedArgs.get(OPTIONAL_EXTENSIONS_NAME);
+  }
+
+  /**
+  * @return a fraction from 0 to 1 of pictures named by the date format which
+  *     are read to verify their names.
+  */
+  public double getVerifySample() {
+    return (double) parsedArgs.get(VERIFY_SAMPLE_NAME);
+  }
+
+  /**
+  * @return a number of worker processes renaming shards of the paths, 1 if
+  *     the paths are renamed by this process.
+  */
+  public int getShards() {
+    return (int) parsedArgs.get(SHARDS_NAME);
+  }
+
+  /**
+  * @return a file of the shard a worker process renames, null if the process
+  *     is not a worker.
+  */
+  public String getShardFilePath() {
+    return (String) parsedArgs.get(SHARD_FILE_NAME);
+  }
+
+  /**
+  * @return the options given but the paths, the number of shards and the
+  *     metrics file, to be passed to worker processes.
+  */
+  public List<String> getShardWorkerArgs() {
+    List<String> args = new ArrayList<>();
+    for (Option option : commandLine.getOptions()) {
+      if (! SHARDS_NAME.equals(option.getLongOpt())
+          && ! METRICS_NAME.equals(option.getLongOpt()))
+      {
+        args.add("--" + option.getLongOpt());
+        if (option.hasArg()) {
+          args.add(option.getValue());
+        }
+      }
+    }
+    return args;
+  }
+
+  public String[] getSidecars() {
+    return (String[]) parsedArgs.get(SIDECARS_NAME);
+  }
+
   public String[] getPictureDirPaths() {
     return (String[]) parsedArgs.get(PICTURE_DIR_PATHS_NAME);
   }
@@ -95,6 +261,59 @@ public final class CliOptions {
         DRY_RUN_NAME,
         false,
         "Just output how rename will occur"));
+    options.addOption(new Option("wp",
+        WRITE_PLAN_NAME,
+        true,
+        "Write a file of planned renames to be applied later, nothing is renamed"));
+    options.addOption(new Option("ap",
+        APPLY_PLAN_NAME,
+        true,
+        "Rename files as planned in a file written before, no path is scanned"));
+    options.addOption(new Option("j",
+        JOURNAL_NAME,
+        true,
+        "Journal renames to a new file to resume or undo them later"));
+    options.addOption(new Option("rs",
+        RESUME_NAME,
+        false,
+        "Complete renames interrupted in the journal and continue the plan "
+        + "after the last journaled rename"));
+    options.addOption(new Option("u",
+        UNDO_NAME,
+        true,
+        "Undo renames of a journal written before, no path is scanned"));
+    options.addOption(new Option("w",
+        WATCH_NAME,
+        false,
+        "Keep watching the paths after they are processed and rename new pictures "
+        + "as they appear"));
+    options.addOption(new Option("pg",
+        PROGRESS_NAME,
+        true,
+        "Print processed files, throughput and ETA every given number of seconds"));
+    options.addOption(new Option("ms",
+        METRICS_NAME,
+        true,
+        "Write a JSON summary of counters and latencies of the run stages to a file"));
+    options.addOption(new Option("q",
+        QUIET_NAME,
+        false,
+        "Print failures and errors only"));
+    options.addOption(new Option("v",
+        VERBOSE_NAME,
+        false,
+        "Print the date taken of every picture read as well"));
+    options.addOption(new Option("of",
+        OUTPUT_FORMAT_NAME,
+        true,
+        "Format of the output, \"text\" or \"ndjson\" to print a JSON object of source, "
+        + "target, outcome and reason per line, default is \"text\""));
+    options.addOption(new Option("nc",
+        NO_CACHE_NAME,
+        false,
+        String.format(
+        "Read metadata of all the pictures ignoring the metadata cache %s",
+        MetadataCache.DEFAULT_FILE)));
     options.addOption("h",
         HELP_NAME,
         false,
@@ -104,6 +323,56 @@ public final class CliOptions {
         true,
         "Maximum depth of inner folders to scan for picture files "
         + "default is infinity"));
+    options.addOption(new Option("t",
+        THREADS_NAME,
+        true,
+        String.format(
+        "Number of threads reading picture metadata, or of pictures read at once on "
+        + "virtual threads, default is the number of processors, or %s on virtual threads",
+        VIRTUAL_THREADS_IN_FLIGHT_DEFAULT)));
+    options.addOption(new Option("vt",
+        VIRTUAL_THREADS_NAME,
+        false,
+        "Read metadata of every picture on a virtual thread, needs a build and a run "
+        + "on JDK 21 or later, platform threads are used otherwise"));
+    options.addOption(new Option("sc",
+        SIDECARS_NAME,
+        true,
+        String.format(
+        "Comma separated sidecar files renamed along with pictures as extension[:folder], "
+        + "a sidecar without a folder is looked up next to the picture "
+        + "default is \"%s\"", StringUtils.join(SidecarIndex.DEFAULT_SIDECARS, ','))));
+    options.addOption(new Option("sh",
+        SHARDS_NAME,
+        true,
+        "Split the paths into shards of directories renamed by the given number of "
+        + "worker processes, default is 1 to rename them by this process"));
+    options.addOption(new Option("sf",
+        SHARD_FILE_NAME,
+        true,
+        "Rename the directories of a shard file written by a process run with --shards, "
+        + "no path is given then"));
+    options.addOption(new Option("sn",
+        SNIFF_NAME,
+        false,
+        "Recognize pictures by their first bytes as well, so pictures of unknown or wrong "
+        + "extensions are renamed and other files of picture extensions are skipped"));
+    options.addOption(new Option("ox",
+        OPTIONAL_EXTENSIONS_NAME,
+        false,
+        String.format("Recognize pictures of less common extensions as well: %s",
+            StringUtils.join(MediaTypes.getOptionalExtensions(), ", "))));
+    options.addOption(new Option("dp",
+        DUPLICATES_NAME,
+        true,
+        "Compare a picture with the files of the name it is given, \"skip\" to leave "
+        + "a copy as it is, \"hardlink\" to replace a copy with a hard link and rename it, "
+        + "\"report\" to report a copy and rename it"));
+    options.addOption(new Option("vs",
+        VERIFY_SAMPLE_NAME,
+        true,
+        "Fraction from 0 to 1 of pictures already named by the date format which are "
+        + "read to verify their names, the others are skipped unread, default is 0"));
   }
   
   private void parseArgs(String[] args) throws ParseException {
@@ -111,20 +380,140 @@ public final class CliOptions {
     this.parsedArgs = new HashMap<>();
     CommandLineParser parser = new DefaultParser();
     CommandLine cl = parser.parse(options, args);
+    this.commandLine = cl;
     this.parsedArgs.put(DATE_FORMAT_NAME, cl.getOptionValue(DATE_FORMAT_NAME,
         DATE_FORMAT_DEFAULT));
     this.parsedArgs.put(MAX_DEPTH_NAME, Integer.parseInt(cl.getOptionValue(MAX_DEPTH_NAME,
         "-1")));
     this.parsedArgs.put(DRY_RUN_NAME, cl.hasOption(DRY_RUN_NAME));
+    this.parsedArgs.put(WRITE_PLAN_NAME, cl.getOptionValue(WRITE_PLAN_NAME));
+    this.parsedArgs.put(APPLY_PLAN_NAME, cl.getOptionValue(APPLY_PLAN_NAME));
+    this.parsedArgs.put(JOURNAL_NAME, cl.getOptionValue(JOURNAL_NAME));
+    this.parsedArgs.put(RESUME_NAME, cl.hasOption(RESUME_NAME));
+    this.parsedArgs.put(UNDO_NAME, cl.getOptionValue(UNDO_NAME));
+    this.parsedArgs.put(WATCH_NAME, cl.hasOption(WATCH_NAME));
+    this.parsedArgs.put(NO_CACHE_NAME, cl.hasOption(NO_CACHE_NAME));
+    this.parsedArgs.put(PROGRESS_NAME, Integer.parseInt(cl.getOptionValue(PROGRESS_NAME, "0")));
+    this.parsedArgs.put(METRICS_NAME, cl.getOptionValue(METRICS_NAME));
+    this.parsedArgs.put(QUIET_NAME, cl.hasOption(QUIET_NAME));
+    this.parsedArgs.put(VERBOSE_NAME, cl.hasOption(VERBOSE_NAME));
+    this.parsedArgs.put(OUTPUT_FORMAT_NAME, cl.getOptionValue(OUTPUT_FORMAT_NAME, "text"));
+    this.parsedArgs.put(VIRTUAL_THREADS_NAME, cl.hasOption(VIRTUAL_THREADS_NAME));
+    this.parsedArgs.put(THREADS_NAME, Integer.parseInt(cl.getOptionValue(THREADS_NAME,
+        String.valueOf(cl.hasOption(VIRTUAL_THREADS_NAME)
+            ? VIRTUAL_THREADS_IN_FLIGHT_DEFAULT
+            : Runtime.getRuntime().availableProcessors()))));
+    this.parsedArgs.put(SIDECARS_NAME, cl.hasOption(SIDECARS_NAME)
+        ? cl.getOptionValue(SIDECARS_NAME).split(",")
+        : SidecarIndex.DEFAULT_SIDECARS);
+    this.parsedArgs.put(SNIFF_NAME, cl.hasOption(SNIFF_NAME));
+    this.parsedArgs.put(OPTIONAL_EXTENSIONS_NAME, cl.hasOption(OPTIONAL_EXTENSIONS_NAME));
+    this.parsedArgs.put(DUPLICATES_NAME, cl.getOptionValue(DUPLICATES_NAME));
+    this.parsedArgs.put(VERIFY_SAMPLE_NAME, Double.parseDouble(cl.getOptionValue(
+        VERIFY_SAMPLE_NAME, "0")));
+    this.parsedArgs.put(SHARDS_NAME, Integer.parseInt(cl.getOptionValue(SHARDS_NAME, "1")));
+    this.parsedArgs.put(SHARD_FILE_NAME, cl.getOptionValue(SHARD_FILE_NAME));
     this.parsedArgs.put(PICTURE_DIR_PATHS_NAME, cl.getArgs());
     this.parsedArgs.put(HELP_NAME, cl.hasOption(HELP_NAME));
   }
   
   private void check() throws ParseException {
+    if (getThreads() < 1) {
+      throw new ParseException(String.format(
+          "Number of threads [%s] must be positive.",
+          getThreads()));
+    }
+    if (getProgressPeriod() < 0) {
+      throw new ParseException(String.format(
+          "Progress period [%s] must not be negative.",
+          getProgressPeriod()));
+    }
+    if ((boolean) parsedArgs.get(QUIET_NAME) && (boolean) parsedArgs.get(VERBOSE_NAME)) {
+      throw new ParseException("Output is either quiet or verbose.");
+    }
+    if (null == getOutputFormat()) {
+      throw new ParseException(String.format(
+          "Output format [%s] is neither text nor ndjson.",
+          parsedArgs.get(OUTPUT_FORMAT_NAME)));
+    }
+    if (null != parsedArgs.get(DUPLICATES_NAME) && null == getDuplicates()) {
+      throw new ParseException(String.format(
+          "Duplicates policy [%s] is neither skip, hardlink nor report.",
+          parsedArgs.get(DUPLICATES_NAME)));
+    }
+    if (! (getVerifySample() >= 0 && getVerifySample() <= 1)) {
+      throw new ParseException(String.format(
+          "Verify sample [%s] must be from 0 to 1.",
+          getVerifySample()));
+    }
+    if (getShards() < 1) {
+      throw new ParseException(String.format(
+          "Number of shards [%s] must be positive.",
+          getShards()));
+    }
+    if ((getShards() > 1 || null != getShardFilePath())
+        && (isWatch() || null != getWritePlanPath() || null != getApplyPlanPath()
+            || null != getJournalPath() || null != getUndoPath()))
+    {
+      throw new ParseException("Shards are renamed without plans, journals or watching.");
+    }
+    if (null != getShardFilePath()) {
+      if (getShards() > 1 || getPictureDirPaths().length > 0) {
+        throw new ParseException("A shard file is renamed without sharding or scanning paths.");
+      }
+      if (! new File(getShardFilePath()).isFile()) {
+        throw new ParseException(String.format(
+            "[%s] is not a file. Exiting.",
+            getShardFilePath()));
+      }
+      return;
+    }
+    if (isResume() && (null == getJournalPath() || ! new File(getJournalPath()).isFile())) {
+      throw new ParseException("A run is resumed from an existing journal.");
+    }
+    if (! isResume() && null != getJournalPath() && new File(getJournalPath()).length() > 0) {
+      throw new ParseException(String.format(
+          "[%s] keeps renames to undo, resume it or give a new journal. Exiting.",
+          getJournalPath()));
+    }
+    if (isWatch() && (null != getWritePlanPath() || null != getApplyPlanPath()
+        || null != getUndoPath()))
+    {
+      throw new ParseException("Paths are watched without writing, applying or undoing plans.");
+    }
+    if (null != getUndoPath()) {
+      if (null != getApplyPlanPath() || getPictureDirPaths().length > 0) {
+        throw new ParseException("A journal is undone without applying a plan or scanning paths.");
+      }
+      if (! new File(getUndoPath()).isFile()) {
+        throw new ParseException(String.format(
+            "[%s] is not a file. Exiting.",
+            getUndoPath()));
+      }
+      return;
+    }
+    if (null != getApplyPlanPath()) {
+      if (null != getWritePlanPath() || getPictureDirPaths().length > 0) {
+        throw new ParseException("A plan is applied without writing a plan or scanning paths.");
+      }
+      if (! new File(getApplyPlanPath()).isFile()) {
+        throw new ParseException(String.format(
+            "[%s] is not a file. Exiting.",
+            getApplyPlanPath()));
+      }
+      return;
+    }
     if (getPictureDirPaths().length == 0) {
       printHelp();
       throw new ParseException("Define path(s) where pictures have to be processed.");
     }
+    for (String sidecar : getSidecars()) {
+      if (! sidecar.matches("[^:.]+(:.+)?")) {
+        throw new ParseException(String.format(
+            "[%s] is not a sidecar definition as extension[:folder].",
+            sidecar));
+      }
+    }
     for (String pictureDirPath : getPictureDirPaths()) {
       if (! new File(pictureDirPath).isDirectory()) {
         throw new ParseException(String.format(
@@ -0,0 +1,237 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedDirectoryStreamException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Open handles of the directories files are renamed in.
+ * <p>
+ * A file is probed and unlinked by its name relative to an open handle of its
+ * directory, like {@code fstatat} and {@code unlinkat} do, so the kernel does
+ * not resolve the whole path of the directory again for every file, and a
+ * directory renamed or replaced meanwhile is not mixed up with the one the
+ * file was checked in. Where the file system has no secure directory streams,
+ * files are probed and unlinked by their paths.
+ * <p>
+ * A rename never replaces an existing file: the new name is linked first,
+ * which fails if it is taken, and the old one is unlinked then. So a file
+ * which takes the planned name after it was checked makes the rename fail
+ * rather than get lost.
+ * <p>
+ * The handles of the directories used last are kept open, the others are
+ * closed.
+ */
+final class DirectoryHandles implements Closeable {
+  private static final int CAPACITY = 64;
+  private final Map<File, Handle> handles = new LinkedHashMap<File, Handle>(CAPACITY, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<File, Handle> eldest) {
+      if (size() > CAPACITY) {
+        eldest.getValue().close();
+        return true;
+      }
+      return false;
+    }
+  };
+
+  /**
+  * @return true if the file exists, a link is not followed.
+  */
+  boolean exists(File file) {
+    for (int attempt = 0; attempt < 2; attempt++) {
+      SecureDirectoryStream<Path> stream = get(file.getParentFile()).stream;
+      if (null == stream) {
+        break;
+      }
+      try {
+        stream.getFileAttributeView(name(file), BasicFileAttributeView.class,
+            LinkOption.NOFOLLOW_LINKS).readAttributes();
+        return true;
+      } catch (NoSuchFileException e) {
+        return false;
+      } catch (IOException e) {
+        // let the path tell it
+        break;
+      } catch (ClosedDirectoryStreamException e) {
+        // closed by another thread, it is opened again
+      }
+    }
+    return Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS);
+  }
+
+  /**
+  * @return true if files of the directory can be renamed, it is checked once
+  *     while the directory is open.
+  */
+  boolean isWritable(File dir) {
+    return get(dir).writable;
+  }
+
+  /**
+  * Renames the file to the new name, an existing file of the new name is
+  * not replaced.
+  * <p>
+  * The new name is linked to the file and the old name is unlinked then, a
+  * rename interrupted between the two is completed by renaming the file
+  * again. Where the file system has no hard links, the file is moved.
+  *
+  * @throws FileAlreadyExistsException if another file has the new name.
+  * @throws IOException if the file is not renamed.
+  */
+  void rename(File file, File newFile) throws IOException {
+    try {
+      Files.createLink(newFile.toPath(), file.toPath());
+    } catch (FileAlreadyExistsException e) {
+      if (! isLinked(file, newFile)) {
+        throw e;
+      }
+    } catch (UnsupportedOperationException | FileSystemException e) {
+      if (e instanceof NoSuchFileException) {
+        throw (NoSuchFileException) e;
+      }
+      // without REPLACE_EXISTING the move fails if the new name is taken
+      Files.move(file.toPath(), newFile.toPath());
+      return;
+    }
+    try {
+      delete(file);
+    } catch (IOException e) {
+      Files.deleteIfExists(newFile.toPath());
+      throw e;
+    }
+  }
+
+  /**
+  * @return true if both names are of the same file, a rename of the file to
+  *     the new name has been interrupted after the link.
+  */
+  boolean isLinked(File file, File newFile) {
+    try {
+      return exists(file) && exists(newFile) && Files.isSameFile(file.toPath(), newFile.toPath());
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private void delete(File file) throws IOException {
+    for (int attempt = 0; attempt < 2; attempt++) {
+      SecureDirectoryStream<Path> stream = get(file.getParentFile()).stream;
+      if (null == stream) {
+        break;
+      }
+      try {
+        // unlinkat of the name in the directory the new name was checked in
+        stream.deleteFile(name(file));
+        return;
+      } catch (ClosedDirectoryStreamException e) {
+        // closed by another thread, it is opened again
+      }
+    }
+    Files.delete(file.toPath());
+  }
+
+  @Override
+  public void close() {
+    List<Handle> closed;
+    synchronized (handles) {
+      closed = new ArrayList<>(handles.values());
+      handles.clear();
+    }
+    for (Handle handle : closed) {
+      handle.close();
+    }
+  }
+
+  private Handle get(File dir) {
+    synchronized (handles) {
+      Handle handle = handles.get(dir);
+      if (null == handle || handle.closed) {
+        handle = new Handle(dir);
+        handles.put(dir, handle);
+      }
+      return handle;
+    }
+  }
+
+  private static Path name(File file) {
+    return file.toPath().getFileName();
+  }
+
+  /**
+   * An open directory, or a directory known by its path only if it can not
+   * be opened securely.
+   */
+  private static final class Handle {
+    private final SecureDirectoryStream<Path> stream;
+    private final boolean writable;
+    private volatile boolean closed;
+
+    Handle(File dir) {
+      SecureDirectoryStream<Path> secureStream = null;
+      try {
+        DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir.toPath());
+        if (dirStream instanceof SecureDirectoryStream) {
+          secureStream = (SecureDirectoryStream<Path>) dirStream;
+        } else {
+          dirStream.close();
+        }
+      } catch (IOException e) {
+        // probes and renames of the files report the problem
+      }
+      this.stream = secureStream;
+      this.writable = Files.isWritable(dir.toPath());
+    }
+
+    void close() {
+      closed = true;
+      if (null != stream) {
+        try {
+          stream.close();
+        } catch (IOException e) {
+          // nothing is read from the stream
+        }
+      }
+    }
+  }
+}
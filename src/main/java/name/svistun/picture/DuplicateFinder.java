@@ -0,0 +1,233 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds byte-identical copies among pictures which are given the same name.
+ * <p>
+ * A picture is compared only if its name is taken in its directory, with the
+ * files holding the names {@code base}, {@code base_1}... Files are compared
+ * by size first, then by a digest of their head and tail, and only then by a
+ * digest of their whole content read through memory-mapped chunks, so shots
+ * of a burst taken in the same second are rarely read past their sizes.
+ * Digests are kept per file key, a file is read once however many pictures
+ * of its group are compared with it.
+ */
+final class DuplicateFinder {
+
+  /**
+   * What is done to a picture which is a copy of another one.
+   */
+  enum Policy {
+    /** The copy is left as it is. */
+    SKIP,
+    /** The copy is replaced with a hard link to the other picture and renamed. */
+    HARDLINK,
+    /** The copy is reported and renamed. */
+    REPORT
+  }
+
+  private static final int SAMPLE_SIZE = 64 * 1024;
+  private static final long CHUNK_SIZE = 64L * 1024 * 1024;
+  private static final int CACHE_CAPACITY = 256;
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  private final Policy policy;
+  private final Map<Object, Content> contents = Collections.synchronizedMap(
+      new LinkedHashMap<Object, Content>(CACHE_CAPACITY, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Content> eldest) {
+          return size() > CACHE_CAPACITY;
+        }
+      });
+
+  DuplicateFinder(Policy policy) {
+    this.policy = policy;
+  }
+
+  Policy getPolicy() {
+    return policy;
+  }
+
+  /**
+  * @param file a picture file.
+  * @param candidates files holding the names the picture collides with.
+  * @return the first candidate of the same content as the picture or null
+  *     if there is no one.
+  * @throws IOException if a file can not be read.
+  */
+  File find(File file, List<File> candidates) throws IOException {
+    Content content = get(file.toPath());
+    if (null == content) {
+      return null;
+    }
+    for (File candidate : candidates) {
+      Content other = get(candidate.toPath());
+      if (null != other && isSame(content, other)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  private boolean isSame(Content content, Content other) throws IOException {
+    if (content.key.equals(other.key)) {
+      // hard linked already
+      return true;
+    }
+    if (content.size != other.size) {
+      return false;
+    }
+    long start = Metrics.start();
+    try {
+      if (! Arrays.equals(content.getSampleDigest(), other.getSampleDigest())) {
+        return false;
+      }
+      // the sample of a small file is the whole file
+      return content.size <= 2 * SAMPLE_SIZE
+          || Arrays.equals(content.getDigest(), other.getDigest());
+    } finally {
+      Metrics.stop(Metrics.Stage.HASH, start);
+    }
+  }
+
+  /**
+  * @return the content of the file or null if it is not a regular file.
+  */
+  private Content get(Path path) throws IOException {
+    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    if (! attrs.isRegularFile()) {
+      return null;
+    }
+    // a file key survives renames, a path is used where there are no keys
+    Object key = null == attrs.fileKey() ? path.toAbsolutePath() : attrs.fileKey();
+    long modified = attrs.lastModifiedTime().toMillis();
+    synchronized (contents) {
+      Content content = contents.get(key);
+      if (null == content || content.size != attrs.size() || content.modified != modified) {
+        content = new Content(key, attrs.size(), modified);
+        contents.put(key, content);
+      }
+      content.path = path;
+      return content;
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM provides SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Digests of a file, made when they are needed first.
+   */
+  private static final class Content {
+    private final Object key;
+    private final long size;
+    private final long modified;
+    private volatile Path path;
+    private byte[] sampleDigest;
+    private byte[] digest;
+
+    Content(Object key, long size, long modified) {
+      this.key = key;
+      this.size = size;
+      this.modified = modified;
+    }
+
+    /**
+    * @return a digest of the first and the last bytes of the file.
+    */
+    synchronized byte[] getSampleDigest() throws IOException {
+      if (null == sampleDigest) {
+        MessageDigest md = newDigest();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+          update(md, channel, buffer, 0);
+          if (size > SAMPLE_SIZE) {
+            update(md, channel, buffer, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE));
+          }
+        }
+        sampleDigest = md.digest();
+      }
+      return sampleDigest;
+    }
+
+    /**
+    * @return a digest of the whole file.
+    */
+    synchronized byte[] getDigest() throws IOException {
+      if (null == digest) {
+        MessageDigest md = newDigest();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          for (long position = 0; position < size; position += CHUNK_SIZE) {
+            md.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                Math.min(CHUNK_SIZE, size - position)));
+          }
+        }
+        digest = md.digest();
+      }
+      return digest;
+    }
+
+    private static void update(MessageDigest md,
+        FileChannel channel,
+        ByteBuffer buffer,
+        long position)
+        throws IOException
+    {
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        int read = channel.read(buffer, position + buffer.position());
+        if (read < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      md.update(buffer);
+    }
+  }
+}
@@ -0,0 +1,374 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules reads of files per storage device, each device with its own
+ * limit of reads at once.
+ * <p>
+ * The limit of a device adapts to the latency of its reads: while reads
+ * take about as long as the fastest ones did, the limit grows, once they
+ * queue up in the device and take longer, it shrinks. So a spinning disk
+ * ends up with a few reads at once and a solid state drive with many, up to
+ * the maximum limit.
+ * Waiting reads of a device are ordered by directory and then by file key,
+ * the inode number where it is known, to keep the access of a disk close to
+ * sequential. Large files wait in a lane of their own which is given at most
+ * half of the limit and takes turns with the lane of small files, so neither
+ * of them starves the other.
+ * <p>
+ * Reads are run by an executor, the scheduler only decides when. Only reads
+ * of the device are to be submitted: work done without it completes quickly
+ * and would be taken as the latency the device is capable of.
+ */
+final class IoScheduler {
+  // movies are read box by box, pictures mostly are not that large
+  private static final long LARGE_FILE_SIZE = 32L * 1024 * 1024;
+  private static final int INITIAL_LIMIT = 4;
+  private static final double SMOOTHING = 0.1;
+  private static final double BASELINE_DRIFT = 0.0001;
+  // reads may take that much longer than the fastest ones before the limit shrinks
+  private static final double TOLERANCE = 2.0;
+  private static final double MIN_GRADIENT = 0.5;
+  private static final String INODE = "ino=";
+  private static final Object UNKNOWN_DEVICE = new Object();
+  private final Executor executor;
+  private final int maxLimit;
+  private final LongSupplier clock;
+  private final Map<Object, Device> devices = new HashMap<>();
+  private long dirCount;
+  private long readCount;
+
+  /**
+  * @param executor an executor running the reads.
+  * @param maxLimit a maximum number of reads at once per device.
+  */
+  IoScheduler(Executor executor, int maxLimit) {
+    this(executor, maxLimit, System::nanoTime);
+  }
+
+  /**
+  * @param executor an executor running the reads.
+  * @param maxLimit a maximum number of reads at once per device.
+  * @param clock a source of nanoseconds the latency of reads is measured by.
+  */
+  IoScheduler(Executor executor, int maxLimit, LongSupplier clock) {
+    this.executor = executor;
+    this.maxLimit = maxLimit;
+    this.clock = clock;
+  }
+
+  /**
+  * Starts scheduling reads of a directory, they come after the reads of the
+  * directories started before on the same device.
+  */
+  synchronized Directory directory(Path dir) {
+    Object deviceKey = deviceKey(dir);
+    Device device = devices.get(deviceKey);
+    if (null == device) {
+      device = new Device(dir, Math.min(INITIAL_LIMIT, maxLimit));
+      devices.put(deviceKey, device);
+    }
+    return new Directory(device, dirCount++);
+  }
+
+  /**
+  * @param dir a directory of the file.
+  * @param attrs attributes of the file, null if they are not known.
+  * @param read a read of the file.
+  * @return a future result of the read.
+  */
+  synchronized <T> Future<T> submit(Directory dir, BasicFileAttributes attrs, Callable<T> read) {
+    boolean large = null != attrs && attrs.size() >= LARGE_FILE_SIZE;
+    Read<T> task = new Read<>(dir.device, read, large, dir.order, fileOrder(attrs), readCount++);
+    dir.device.add(task);
+    return task.result;
+  }
+
+  /**
+  * @return a limit of reads at once the device of the directory has come to.
+  */
+  double getLimit(Directory dir) {
+    synchronized (dir.device) {
+      return dir.device.limit;
+    }
+  }
+
+  /**
+  * Records the limits the devices have come to in the metrics.
+  */
+  synchronized void report() {
+    for (Device device : devices.values()) {
+      String name;
+      try {
+        name = Files.getFileStore(device.dir).toString();
+      } catch (IOException e) {
+        name = device.dir.toString();
+      }
+      synchronized (device) {
+        Metrics.device(name, device.reads, (int) device.limit, device.peakInFlight);
+      }
+    }
+  }
+
+  /**
+  * @return a key of the device of the directory, a device number where the
+  *     file system tells it and a file store otherwise.
+  */
+  private static Object deviceKey(Path dir) {
+    try {
+      return Files.getAttribute(dir, "unix:dev");
+    } catch (UnsupportedOperationException | IllegalArgumentException e) {
+      try {
+        return Files.getFileStore(dir);
+      } catch (IOException ex) {
+        return UNKNOWN_DEVICE;
+      }
+    } catch (IOException e) {
+      return UNKNOWN_DEVICE;
+    }
+  }
+
+  /**
+  * @return an inode number of the file or 0 if it is not known, files of
+  *     the same order are read in the order they are submitted.
+  */
+  private static long fileOrder(BasicFileAttributes attrs) {
+    Object fileKey = null == attrs ? null : attrs.fileKey();
+    if (null == fileKey) {
+      return 0;
+    }
+    // file keys are opaque, the key of a Unix file prints its inode number
+    String key = fileKey.toString();
+    int start = key.indexOf(INODE);
+    if (start < 0) {
+      return 0;
+    }
+    long inode = 0;
+    for (int i = start + INODE.length();
+        i < key.length() && Character.isDigit(key.charAt(i));
+        i++)
+    {
+      inode = inode * 10 + key.charAt(i) - '0';
+    }
+    return inode;
+  }
+
+  /**
+   * A directory reads of which are scheduled.
+   */
+  static final class Directory {
+    private final Device device;
+    private final long order;
+
+    Directory(Device device, long order) {
+      this.device = device;
+      this.order = order;
+    }
+  }
+
+  /**
+   * Latency of reads of a lane smoothed over the last few reads, and the
+   * lowest one seen, which drifts up slowly in case the device has got
+   * slower for good.
+   */
+  private static final class Latency {
+    private double nanos;
+    private double baselineNanos;
+
+    /**
+    * @return a ratio of the tolerated latency to the recent one, less than 1
+    *     if reads take longer than tolerated.
+    */
+    double add(long nanos) {
+      if (baselineNanos == 0) {
+        this.nanos = nanos;
+        baselineNanos = nanos;
+      } else {
+        this.nanos += SMOOTHING * (nanos - this.nanos);
+        baselineNanos = Math.min(this.nanos,
+            baselineNanos + BASELINE_DRIFT * (this.nanos - baselineNanos));
+      }
+      return Math.min(1.0, Math.max(MIN_GRADIENT,
+          TOLERANCE * baselineNanos / Math.max(1.0, this.nanos)));
+    }
+  }
+
+  private final class Device {
+    // a directory of the device to name it by
+    private final Path dir;
+    private final PriorityQueue<Read<?>> small = new PriorityQueue<>(Read.ORDER);
+    private final PriorityQueue<Read<?>> large = new PriorityQueue<>(Read.ORDER);
+    private final Latency smallLatency = new Latency();
+    private final Latency largeLatency = new Latency();
+    private double limit;
+    private int inFlight;
+    private int largeInFlight;
+    private boolean largeTurn;
+    private long reads;
+    private int peakInFlight;
+
+    Device(Path dir, int limit) {
+      this.dir = dir;
+      this.limit = limit;
+    }
+
+    long nanoTime() {
+      return clock.getAsLong();
+    }
+
+    void add(Read<?> read) {
+      synchronized (this) {
+        (read.large ? large : small).add(read);
+      }
+      dispatch();
+    }
+
+    /**
+    * Adapts the limit to the latency of a finished read.
+    */
+    void done(Read<?> read, long nanos) {
+      synchronized (this) {
+        // a device far below its limit tells nothing about the limit
+        boolean saturated = inFlight >= limit / 2;
+        inFlight--;
+        reads++;
+        if (read.large) {
+          largeInFlight--;
+        }
+        double gradient = (read.large ? largeLatency : smallLatency).add(nanos);
+        if (saturated) {
+          // a step per read, so the limit moves to the new one per limit of reads
+          double newLimit = limit * gradient + 1;
+          limit = Math.max(1, Math.min(maxLimit, limit + (newLimit - limit) / limit));
+        }
+      }
+      dispatch();
+    }
+
+    /**
+    * Starts waiting reads while the device is below its limit.
+    */
+    private void dispatch() {
+      while (true) {
+        Read<?> read;
+        synchronized (this) {
+          read = next();
+          if (null == read) {
+            return;
+          }
+          inFlight++;
+          peakInFlight = Math.max(peakInFlight, inFlight);
+          if (read.large) {
+            largeInFlight++;
+          }
+        }
+        try {
+          executor.execute(read);
+        } catch (RejectedExecutionException e) {
+          // the executor is shut down, nobody waits for the read
+          read.result.cancel(false);
+          synchronized (this) {
+            inFlight--;
+            if (read.large) {
+              largeInFlight--;
+            }
+          }
+          return;
+        }
+      }
+    }
+
+    private Read<?> next() {
+      if (inFlight >= (int) limit) {
+        return null;
+      }
+      boolean largeAllowed = ! large.isEmpty()
+          && largeInFlight < Math.max(1, (int) limit / 2);
+      if (largeAllowed && (small.isEmpty() || largeTurn)) {
+        largeTurn = false;
+        return large.poll();
+      }
+      largeTurn = true;
+      return small.poll();
+    }
+  }
+
+  private static final class Read<T> implements Runnable {
+    private static final Comparator<Read<?>> ORDER = Comparator
+        .comparingLong((Read<?> read) -> read.dirOrder)
+        .thenComparingLong(read -> read.fileOrder)
+        .thenComparingLong(read -> read.submitOrder);
+    private final Device device;
+    private final Callable<T> read;
+    private final boolean large;
+    private final long dirOrder;
+    private final long fileOrder;
+    private final long submitOrder;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    Read(Device device,
+        Callable<T> read,
+        boolean large,
+        long dirOrder,
+        long fileOrder,
+        long submitOrder)
+    {
+      this.device = device;
+      this.read = read;
+      this.large = large;
+      this.dirOrder = dirOrder;
+      this.fileOrder = fileOrder;
+      this.submitOrder = submitOrder;
+    }
+
+    @Override
+    public void run() {
+      long start = device.nanoTime();
+      try {
+        result.complete(read.call());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      } finally {
+        device.done(this, device.nanoTime() - start);
+      }
+    }
+  }
+}
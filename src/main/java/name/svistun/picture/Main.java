@@ -24,6 +24,8 @@ package name.svistun.picture;
  * SOFTWARE.
  */
 
+import name.svistun.picture.type.SidecarIndex;
+
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang3.StringUtils;
 
@@ -38,7 +40,11 @@ public final class Main {
         cliOptions.printHelp();
         return;
       }
-      PictureManager photoManager = new PictureManager(cliOptions.getDateFormat());
+      SidecarIndex.configure(cliOptions.getSidecars());
+      PictureFactory.configure(cliOptions.isSniff());
+      MediaTypes.configure(cliOptions.isOptionalExtensions());
+      PictureManager photoManager = new PictureManager(cliOptions.getDateFormat(),
+          cliOptions.getThreads(), cliOptions.isVirtualThreads());
       photoManager.execute(cliOptions);
     } catch (ParseException e) {
       System.err.println(e.toString() + System.lineSeparator()
@@ -0,0 +1,79 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import com.drew.imaging.ImageProcessingException;
+
+/**
+ * A type of picture files, a service loaded by {@link MediaTypes}.
+ * <p>
+ * A type is registered by listing its class in
+ * {@code META-INF/services/name.svistun.picture.MediaType} of a jar on the
+ * class path, so a new format is supported without changes of
+ * {@link PictureFactory}.
+ */
+public interface MediaType {
+
+  /**
+  * @return lower case extensions of the files of the type.
+  */
+  Set<String> getExtensions();
+
+  /**
+  * @return lower case extensions of less common files of the type, they are
+  *     recognized only if optional extensions are asked for.
+  */
+  default Set<String> getOptionalExtensions() {
+    return Collections.emptySet();
+  }
+
+  /**
+  * Tells if the file content is of the type by its first bytes.
+  *
+  * @param head first bytes of the file, up to {@link MediaTypes#SNIFF_LENGTH}.
+  * @param length a number of the bytes read, less than the head length if the
+  *     file is shorter.
+  */
+  boolean matches(byte[] head, int length);
+
+  /**
+  * Reads a picture from the file.
+  */
+  Picture read(File file) throws IOException, ImageProcessingException, NotImageFileException;
+
+  /**
+  * Creates a picture of metadata cached before, the file is not read.
+  *
+  * @param paramFile a parameter file cached, null if there is none.
+  * @return a picture or null if the cached metadata is out of date.
+  */
+  Picture cached(File file, Date dateTaken, File paramFile);
+}
@@ -0,0 +1,202 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A registry of the {@link MediaType} services found on the class path.
+ * <p>
+ * Types are looked up by the extension of a file name in an open addressing
+ * table hashed ignoring case, so a lookup neither cuts nor lowers the name.
+ * If types share an extension, the type loaded first gets it. Optional
+ * extensions of the types are looked up only once they are configured to.
+ */
+public final class MediaTypes {
+  public static final int SNIFF_LENGTH = 16;
+  private static final byte[] FTYP = "ftyp".getBytes(StandardCharsets.US_ASCII);
+  private static final List<MediaType> TYPES = new ArrayList<>();
+  private static volatile Table table;
+
+  static {
+    for (MediaType type : ServiceLoader.load(MediaType.class)) {
+      TYPES.add(type);
+    }
+    table = new Table(false);
+  }
+
+  private MediaTypes() {}
+
+  /**
+  * @param optionalExtensions true to recognize optional extensions of the
+  *     types as well.
+  */
+  public static void configure(boolean optionalExtensions) {
+    table = new Table(optionalExtensions);
+  }
+
+  /**
+  * @return optional extensions of all the types.
+  */
+  public static Set<String> getOptionalExtensions() {
+    Set<String> exts = new TreeSet<>();
+    for (MediaType type : TYPES) {
+      exts.addAll(type.getOptionalExtensions());
+    }
+    return exts;
+  }
+
+  /**
+  * @return a type of the file name extension or null if it is unknown.
+  */
+  public static MediaType forName(String fileName) {
+    int extStart = fileName.lastIndexOf('.') + 1;
+    if (extStart == 0) {
+      return null;
+    }
+    int extLength = fileName.length() - extStart;
+    Table table = MediaTypes.table;
+    int i = hash(fileName, extStart) & (table.exts.length - 1);
+    String ext;
+    while (null != (ext = table.exts[i])) {
+      if (ext.length() == extLength && fileName.regionMatches(true, extStart, ext, 0, extLength)) {
+        return table.types[i];
+      }
+      i = (i + 1) & (table.exts.length - 1);
+    }
+    return null;
+  }
+
+  /**
+  * Reads the first {@link #SNIFF_LENGTH} bytes of the file.
+  *
+  * @return a type of the file content or null if it is unknown.
+  */
+  public static MediaType sniff(File file) throws IOException {
+    byte[] head = new byte[SNIFF_LENGTH];
+    int length = 0;
+    try (InputStream in = new FileInputStream(file)) {
+      int read;
+      while (length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+        length += read;
+      }
+    }
+    for (MediaType type : TYPES) {
+      if (type.matches(head, length)) {
+        return type;
+      }
+    }
+    return null;
+  }
+
+  /**
+  * Tells if the head has the bytes at the offset.
+  *
+  * @param length a number of bytes read to the head.
+  */
+  public static boolean matches(byte[] head, int length, int offset, byte[] bytes) {
+    if (offset + bytes.length > length) {
+      return false;
+    }
+    for (int i = 0; i < bytes.length; i++) {
+      if (head[offset + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+  * @param length a number of bytes read to the head.
+  * @return a major brand of an ISO base media file (MP4, QuickTime, HEIF) or
+  *     null if the head is not of such a file.
+  */
+  public static String getBrand(byte[] head, int length) {
+    if (! matches(head, length, 4, FTYP) || length < 12) {
+      return null;
+    }
+    return new String(head, 8, 4, StandardCharsets.US_ASCII);
+  }
+
+  /**
+  * @return a hash of the lower case string from the index on.
+  */
+  private static int hash(String s, int from) {
+    int h = 0;
+    for (int i = from; i < s.length(); i++) {
+      h = 31 * h + Character.toLowerCase(s.charAt(i));
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Types by the extensions recognized.
+   */
+  private static final class Table {
+    private final String[] exts;
+    private final MediaType[] types;
+
+    Table(boolean optionalExtensions) {
+      int count = 0;
+      for (MediaType type : TYPES) {
+        count += type.getExtensions().size()
+            + (optionalExtensions ? type.getOptionalExtensions().size() : 0);
+      }
+      int size = Integer.highestOneBit(Math.max(1, count) * 4);
+      exts = new String[size];
+      types = new MediaType[size];
+      for (MediaType type : TYPES) {
+        add(type, type.getExtensions());
+      }
+      if (optionalExtensions) {
+        for (MediaType type : TYPES) {
+          add(type, type.getOptionalExtensions());
+        }
+      }
+    }
+
+    private void add(MediaType type, Set<String> typeExts) {
+      for (String ext : typeExts) {
+        int i = hash(ext, 0) & (exts.length - 1);
+        while (null != exts[i] && ! exts[i].equals(ext)) {
+          i = (i + 1) & (exts.length - 1);
+        }
+        if (null == exts[i]) {
+          exts[i] = ext;
+          types[i] = type;
+        }
+      }
+    }
+  }
+}
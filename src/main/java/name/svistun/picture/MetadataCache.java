@@ -0,0 +1,432 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Dates taken and sidecar files of pictures kept between runs.
+ * <p>
+ * An entry is looked up by the file key (or the path if the file system has
+ * no file keys) and is valid while the size and the modification time of
+ * the picture file stay the same. Entries are appended to the cache file as
+ * they are added and the file is compacted on close once most of its
+ * records are outdated. The least recently used entries are evicted when
+ * the cache is full, it keeps the entries of a quarter of a million pictures
+ * at most, some 70 megabytes of heap.
+ * <p>
+ * A record is framed by its length and followed by its checksum. Records are
+ * appended in whole records at once under a lock of the cache file, so runs
+ * sharing the cache file do not interleave them, and a damaged record is
+ * skipped on load and dropped by the compaction which follows.
+ * <p>
+ * Worker processes of a sharded run share the cache file read only and
+ * write their entries to delta files merged into the cache afterwards.
+ */
+public final class MetadataCache implements Closeable {
+  public static final File DEFAULT_FILE = new File(System.getProperty("user.home"),
+      ".picture-rename.cache");
+  // files of the former versions, without milliseconds or without checksums, are dropped
+  private static final int MAGIC = 0x50524333;
+  private static final int MAX_ENTRIES = 250000;
+  // a key, a time zone and a parameter file, each of at most 65535 bytes, and three longs
+  private static final int MIN_RECORD_LENGTH = 3 * 2 + 3 * 8;
+  private static final int MAX_RECORD_LENGTH = 3 * (2 + 65535) + 3 * 8;
+  private static final int FLUSH_SIZE = 64 * 1024;
+  private static final String NO_PARAM_FILE = "";
+  private static final String NO_TIME_ZONE = "";
+  private final File cacheFile;
+  private final boolean shared;
+  private final Map<String, Entry> entries;
+  // a lock rather than a monitor, a virtual thread writing under a monitor pins its carrier
+  private final Lock writing = new ReentrantLock();
+  // whole records not appended yet
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream(FLUSH_SIZE);
+  private FileChannel out;
+  private long records;
+
+  public MetadataCache(File cacheFile) throws IOException {
+    this(cacheFile, null);
+  }
+
+  /**
+  * @param deltaFile a file to write added entries to rather than the cache
+  *     file, null to write them to the cache file. With a delta file the
+  *     cache file is only read, so several processes may share it, and the
+  *     delta is merged by {@link #merge(File)} later.
+  */
+  public MetadataCache(File cacheFile, File deltaFile) throws IOException {
+    this.cacheFile = cacheFile;
+    this.shared = null != deltaFile;
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, MetadataCache.Entry> eldest) {
+        return size() > MAX_ENTRIES;
+      }
+    };
+    boolean valid = load(cacheFile, false);
+    if (shared) {
+      out = new FileOutputStream(deltaFile).getChannel();
+      new DataOutputStream(pending).writeInt(MAGIC);
+      return;
+    }
+    if (! valid || records > 2L * entries.size()) {
+      compact();
+    }
+    out = new FileOutputStream(cacheFile, true).getChannel();
+  }
+
+  /**
+  * Adds entries of a delta file written by another cache.
+  *
+  * @return false if the delta file is truncated or corrupted, its entries
+  *     which are intact are added still.
+  */
+  public synchronized boolean merge(File deltaFile) throws IOException {
+    writing.lock();
+    try {
+      return load(deltaFile, true);
+    } finally {
+      writing.unlock();
+    }
+  }
+
+  /**
+  * @param pictureFile a picture file.
+  * @return a cached entry of the picture or null if there is no valid one.
+  * @throws IOException if attributes of the picture file can not be read.
+  */
+  public Entry get(File pictureFile) throws IOException {
+    return get(pictureFile, null);
+  }
+
+  /**
+  * @param pictureFile a picture file.
+  * @param attrs attributes of the picture file, null to read them.
+  * @return a cached entry of the picture or null if there is no valid one.
+  * @throws IOException if attributes of the picture file can not be read.
+  */
+  public Entry get(File pictureFile, BasicFileAttributes attrs) throws IOException {
+    if (null == attrs) {
+      attrs = Files.readAttributes(pictureFile.toPath(), BasicFileAttributes.class);
+    }
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key(pictureFile, attrs));
+    }
+    if (null == entry
+        || entry.size != attrs.size()
+        || entry.modified != attrs.lastModifiedTime().toMillis())
+    {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+  * Caches a picture. A failure to write the cache file is reported and
+  * disables further writes.
+  *
+  * @param pictureFile a picture file.
+  * @param dateTaken a date when the picture was taken.
+  * @param paramFile a file with parameters of the picture, null if there is no one.
+  */
+  public void put(File pictureFile, Date dateTaken, File paramFile) {
+    put(pictureFile, dateTaken, null, paramFile);
+  }
+
+  /**
+  * Caches a picture like {@link #put(File, Date, File)} along with a time
+  * zone of its date taken.
+  *
+  * @param timeZone a time zone the date taken is local to, null if it is unknown.
+  */
+  public void put(File pictureFile, Date dateTaken, TimeZone timeZone, File paramFile) {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(pictureFile.toPath(),
+          BasicFileAttributes.class);
+      String key = key(pictureFile, attrs);
+      Entry entry = new Entry(attrs.size(),
+          attrs.lastModifiedTime().toMillis(),
+          dateTaken.getTime(),
+          null == timeZone ? NO_TIME_ZONE : timeZone.getID(),
+          null == paramFile ? NO_PARAM_FILE : paramFile.getAbsolutePath());
+      synchronized (this) {
+        entries.put(key, entry);
+      }
+      writing.lock();
+      try {
+        if (null != out) {
+          append(key, entry);
+          records++;
+        }
+      } finally {
+        writing.unlock();
+      }
+    } catch (IOException e) {
+      writing.lock();
+      try {
+        if (null != out) {
+          Output.error(cacheFile, "Metadata cache %s is not updated any more, %s",
+              cacheFile.getAbsolutePath(), e.getMessage());
+          closeQuietly();
+        }
+      } finally {
+        writing.unlock();
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    writing.lock();
+    try {
+      if (null != out) {
+        try {
+          flush();
+        } finally {
+          out.close();
+          out = null;
+        }
+      }
+    } finally {
+      writing.unlock();
+    }
+    if (! shared && records > 2L * entries.size()) {
+      compact();
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      // the cache is not written any more anyway
+    }
+    out = null;
+    pending.reset();
+  }
+
+  /**
+  * Adds a record to the pending ones and appends them once they are many.
+  */
+  private void append(String key, Entry entry) throws IOException {
+    write(new DataOutputStream(pending), key, entry);
+    if (pending.size() >= FLUSH_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+  * Appends the pending records under a lock of the file, so they are not
+  * interleaved with records of another run.
+  */
+  private void flush() throws IOException {
+    if (pending.size() == 0) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+    FileLock lock = out.lock();
+    try {
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+    } finally {
+      lock.release();
+    }
+    pending.reset();
+  }
+
+  /**
+  * @param write true to write the entries read to the cache file.
+  * @return false if the file is truncated or has damaged records.
+  */
+  private boolean load(File file, boolean write) throws IOException {
+    if (! file.exists()) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file))))
+    {
+      if (in.readInt() != MAGIC) {
+        return false;
+      }
+      boolean valid = true;
+      CRC32 crc = new CRC32();
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (length < MIN_RECORD_LENGTH || length > MAX_RECORD_LENGTH) {
+          // the framing is lost, records which follow can not be found
+          return false;
+        }
+        byte[] record = new byte[length];
+        in.readFully(record);
+        int checksum = in.readInt();
+        crc.reset();
+        crc.update(record, 0, length);
+        if ((int) crc.getValue() != checksum) {
+          valid = false;
+          continue;
+        }
+        DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+        String key = recordIn.readUTF();
+        Entry entry = new Entry(recordIn.readLong(), recordIn.readLong(), recordIn.readLong(),
+            timeZoneId(recordIn.readUTF()), paramFilePath(recordIn.readUTF()));
+        entries.put(key, entry);
+        records++;
+        if (write && null != out) {
+          append(key, entry);
+        }
+      }
+      if (write && null != out) {
+        flush();
+      }
+      return valid;
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  private void compact() throws IOException {
+    File tmpFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+    try (DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(tmpFile))))
+    {
+      tmpOut.writeInt(MAGIC);
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+        write(tmpOut, entry.getKey(), entry.getValue());
+      }
+    }
+    Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    records = entries.size();
+  }
+
+  /**
+  * Writes a record of the entry framed by its length and its checksum.
+  */
+  private static void write(DataOutputStream out, String key, Entry entry) throws IOException {
+    ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+    DataOutputStream recordOut = new DataOutputStream(record);
+    recordOut.writeUTF(key);
+    recordOut.writeLong(entry.size);
+    recordOut.writeLong(entry.modified);
+    recordOut.writeLong(entry.dateTaken);
+    recordOut.writeUTF(entry.timeZoneId);
+    recordOut.writeUTF(entry.paramFilePath);
+    CRC32 crc = new CRC32();
+    crc.update(record.toByteArray(), 0, record.size());
+    out.writeInt(record.size());
+    record.writeTo(out);
+    out.writeInt((int) crc.getValue());
+  }
+
+  /**
+  * @return the time zone of the record, a shared copy of it, as there are
+  *     only a few time zones and many entries.
+  */
+  private static String timeZoneId(String timeZoneId) {
+    return timeZoneId.isEmpty() ? NO_TIME_ZONE : timeZoneId.intern();
+  }
+
+  private static String paramFilePath(String paramFilePath) {
+    return paramFilePath.isEmpty() ? NO_PARAM_FILE : paramFilePath;
+  }
+
+  private static String key(File file, BasicFileAttributes attrs) {
+    Object fileKey = attrs.fileKey();
+    return null == fileKey ? file.getAbsolutePath() : fileKey.toString();
+  }
+
+  /**
+   * Cached metadata of a picture.
+   */
+  public static final class Entry {
+    private final long size;
+    private final long modified;
+    private final long dateTaken;
+    private final String timeZoneId;
+    private final String paramFilePath;
+
+    Entry(long size, long modified, long dateTaken, String timeZoneId, String paramFilePath) {
+      this.size = size;
+      this.modified = modified;
+      this.dateTaken = dateTaken;
+      this.timeZoneId = timeZoneId;
+      this.paramFilePath = paramFilePath;
+    }
+
+    /**
+    * @return a date when the picture was taken.
+    */
+    public Date getDateTaken() {
+      return new Date(dateTaken);
+    }
+
+    /**
+    * @return a time zone the date taken is local to or null if it is unknown.
+    */
+    public TimeZone getTimeZone() {
+      return NO_TIME_ZONE.equals(timeZoneId) ? null : TimeZone.getTimeZone(timeZoneId);
+    }
+
+    /**
+    * @return a file with parameters of the picture or null if there is no one.
+    */
+    public File getParamFile() {
+      return NO_PARAM_FILE.equals(paramFilePath) ? null : new File(paramFilePath);
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the stages of a run, a periodic
+ * progress line and a JSON summary.
+ * <p>
+ * Metrics are off until {@link #enable()} is called, a stage costs a read of
+ * a static field then. When on, a stage costs two {@link System#nanoTime()}
+ * calls and a few uncontended atomic additions. Latencies are kept in
+ * power-of-two buckets, so percentiles are upper bounds of their buckets.
+ */
+public final class Metrics {
+
+  /**
+   * Timed stages of processing a file.
+   */
+  public enum Stage {
+    LIST_DIR("listDir"),
+    GET_PICTURE("getPicture"),
+    READ_EXIF("readExif"),
+    READ_MP4("readMp4"),
+    READ_MOV("readMov"),
+    FIND_SIDECAR("findSidecar"),
+    RESERVE_NAME("reserveName"),
+    HASH("hash"),
+    RENAME("rename");
+
+    private final String jsonName;
+
+    Stage(String jsonName) {
+      this.jsonName = jsonName;
+    }
+  }
+
+  private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+  private static final Histogram[] HISTOGRAMS = new Histogram[Stage.values().length];
+  private static final LongAdder DISCOVERED = new LongAdder();
+  private static final LongAdder PROCESSED = new LongAdder();
+  private static final LongAdder RENAMED = new LongAdder();
+  private static final LongAdder NAMED = new LongAdder();
+  private static final LongAdder MISNAMED = new LongAdder();
+  private static final List<String> DEVICES = new CopyOnWriteArrayList<>();
+  private static volatile boolean enabled;
+  private static volatile boolean discovering;
+  private static long startNanos;
+  private static ScheduledExecutorService progress;
+
+  private Metrics() {}
+
+  /**
+  * Starts collecting metrics from scratch, the elapsed time of the run is
+  * counted from now.
+  */
+  public static synchronized void enable() {
+    for (int i = 0; i < HISTOGRAMS.length; i++) {
+      HISTOGRAMS[i] = new Histogram();
+    }
+    DISCOVERED.reset();
+    PROCESSED.reset();
+    RENAMED.reset();
+    NAMED.reset();
+    MISNAMED.reset();
+    DEVICES.clear();
+    startNanos = System.nanoTime();
+    discovering = true;
+    enabled = true;
+  }
+
+  /**
+  * @return a start time of a stage to be passed to {@link #stop(Stage, long)}.
+  */
+  public static long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  /**
+  * Records the latency of a stage started at the time.
+  */
+  public static void stop(Stage stage, long start) {
+    record(stage, elapsed(start));
+  }
+
+  /**
+  * @return nanoseconds since the start time, 0 if metrics are off.
+  */
+  public static long elapsed(long start) {
+    return enabled ? System.nanoTime() - start : 0;
+  }
+
+  /**
+  * Records the latency of a stage timed in several parts.
+  */
+  public static void record(Stage stage, long nanos) {
+    if (enabled) {
+      HISTOGRAMS[stage.ordinal()].record(nanos);
+    }
+  }
+
+  static void discovered() {
+    if (enabled) {
+      DISCOVERED.increment();
+    }
+  }
+
+  static void discoveryFinished() {
+    discovering = false;
+  }
+
+  static void processed() {
+    if (enabled) {
+      PROCESSED.increment();
+    }
+  }
+
+  static void renamed() {
+    if (enabled) {
+      RENAMED.increment();
+    }
+  }
+
+  /**
+  * A picture is skipped by its name without reading it.
+  */
+  static void named() {
+    if (enabled) {
+      NAMED.increment();
+    }
+  }
+
+  /**
+  * A picture has a name of the date format which is not of its date taken.
+  */
+  static void misnamed() {
+    if (enabled) {
+      MISNAMED.increment();
+    }
+  }
+
+  /**
+  * Records how a storage device has been read.
+  *
+  * @param name a name of the device.
+  * @param reads a number of files read from the device.
+  * @param limit a number of reads at once the device has come to.
+  * @param peakInFlight a maximum number of reads at once the device had.
+  */
+  static void device(String name, long reads, int limit, int peakInFlight) {
+    if (enabled) {
+      DEVICES.add(String.format("{\"name\":%s,\"reads\":%s,\"limit\":%s,\"peakInFlight\":%s}",
+          Output.toJson(name), reads, limit, peakInFlight));
+    }
+  }
+
+  /**
+  * Prints a progress line with throughput and ETA every period, an info line
+  * of {@link Output}, so it is left out by the quiet output and is a JSON
+  * record of the NDJSON one.
+  */
+  static synchronized void startProgress(int periodSeconds) {
+    progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metrics-progress");
+      thread.setDaemon(true);
+      return thread;
+    });
+    progress.scheduleAtFixedRate(() -> Output.info(progressLine()),
+        periodSeconds, periodSeconds, TimeUnit.SECONDS);
+  }
+
+  static synchronized void stopProgress() {
+    if (null != progress) {
+      progress.shutdownNow();
+      progress = null;
+    }
+  }
+
+  static String progressLine() {
+    long discovered = DISCOVERED.sum();
+    long processed = PROCESSED.sum();
+    double seconds = elapsedSeconds();
+    double rate = seconds > 0 ? processed / seconds : 0;
+    // discovery runs just ahead of processing, the total is known when it ends
+    String eta = discovering || rate == 0
+        ? "unknown until files are discovered"
+        : formatDuration((long) ((discovered - processed) / rate));
+    return String.format(Locale.ROOT,
+        "Processed %s of %s%s files, %.1f files/s, renamed %s, ETA %s",
+        processed,
+        discovered,
+        discovering ? "+" : "",
+        rate,
+        RENAMED.sum(),
+        eta);
+  }
+
+  /**
+  * Writes a JSON summary of the run.
+  *
+  * @param failed a number of pictures which failed to be renamed.
+  */
+  static void writeSummary(File file, int failed) throws IOException {
+    double seconds = elapsedSeconds();
+    long processed = PROCESSED.sum();
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      writer.write(String.format(Locale.ROOT,
+          "{\"elapsedSeconds\":%.3f,\"filesPerSecond\":%.1f,"
+          + "\"files\":{\"discovered\":%s,\"processed\":%s,\"renamed\":%s,\"failed\":%s,"
+          + "\"skippedByName\":%s,\"misnamed\":%s},"
+          + "\"stages\":{",
+          seconds,
+          seconds > 0 ? processed / seconds : 0,
+          DISCOVERED.sum(),
+          processed,
+          RENAMED.sum(),
+          failed,
+          NAMED.sum(),
+          MISNAMED.sum()));
+      for (Stage stage : Stage.values()) {
+        if (stage.ordinal() > 0) {
+          writer.write(',');
+        }
+        writer.write(String.format("\"%s\":", stage.jsonName));
+        HISTOGRAMS[stage.ordinal()].write(writer);
+      }
+      writer.write("},\"devices\":[");
+      for (int i = 0; i < DEVICES.size(); i++) {
+        if (i > 0) {
+          writer.write(',');
+        }
+        writer.write(DEVICES.get(i));
+      }
+      writer.write(String.format("]}%n"));
+    }
+  }
+
+  private static double elapsedSeconds() {
+    return (System.nanoTime() - startNanos) / 1e9;
+  }
+
+  private static String formatDuration(long seconds) {
+    return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+  }
+
+  /**
+   * A latency histogram of power-of-two buckets of nanoseconds.
+   */
+  private static final class Histogram {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      buckets.incrementAndGet(Long.SIZE - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+      long max = maxNanos.get();
+      while (nanos > max && ! maxNanos.compareAndSet(max, nanos)) {
+        max = maxNanos.get();
+      }
+    }
+
+    void write(Writer writer) throws IOException {
+      long count = this.count.sum();
+      writer.write(String.format(Locale.ROOT,
+          "{\"count\":%s,\"totalMillis\":%.3f,\"meanMicros\":%.3f,\"maxMicros\":%.3f",
+          count,
+          totalNanos.sum() / 1e6,
+          count > 0 ? totalNanos.sum() / 1e3 / count : 0,
+          maxNanos.get() / 1e3));
+      for (double percentile : PERCENTILES) {
+        writer.write(String.format(Locale.ROOT,
+            ",\"p%sMicros\":%.3f",
+            Math.round(percentile * 100),
+            percentile(count, percentile) / 1e3));
+      }
+      writer.write('}');
+    }
+
+    /**
+    * @return an upper bound of the percentile in nanoseconds.
+    */
+    private long percentile(long count, double percentile) {
+      long rank = (long) Math.ceil(count * percentile);
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= rank && seen > 0) {
+          return Math.min((2L << i) - 1, maxNanos.get());
+        }
+      }
+      return 0;
+    }
+  }
+}
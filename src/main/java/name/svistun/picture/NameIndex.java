@@ -0,0 +1,307 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Names taken in the directories pictures are renamed in.
+ * <p>
+ * A directory is listed once, when a name is reserved in it for the first
+ * time. Names {@code base}, {@code base_1}, {@code base_2}... are then handed
+ * out by a counter per base name, so a burst of pictures taken in the same
+ * second does not probe the file system for every taken suffix. Reservation
+ * is safe to be done by several threads at once. A name reserved for a
+ * file is kept along with the file, so the files a name collides with are
+ * known even before they are renamed.
+ * <p>
+ * The names of the directories used last are kept, the others are dropped
+ * and listed again once needed. A directory with a reservation which is not
+ * released or committed yet is kept in any case, its reserved names are not
+ * on the file system to be listed again. A released name lowers the counter
+ * of its base name, so the next file of the base name gets it and no
+ * {@code _N} is left out.
+ */
+final class NameIndex {
+  private static final int CACHE_CAPACITY = 64;
+  private final Map<File, DirectoryNames> dirs = Collections.synchronizedMap(
+      new LinkedHashMap<File, DirectoryNames>(CACHE_CAPACITY, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, DirectoryNames> eldest) {
+          if (size() > CACHE_CAPACITY) {
+            Iterator<DirectoryNames> it = values().iterator();
+            while (it.hasNext()) {
+              if (! it.next().isPinned()) {
+                it.remove();
+                break;
+              }
+            }
+          }
+          // removed above if any, the eldest one may be pinned
+          return false;
+        }
+      });
+  private final DirectoryHandles handles;
+
+  /**
+  * @param handles handles of the directories names are probed in.
+  */
+  NameIndex(DirectoryHandles handles) {
+    this.handles = handles;
+  }
+
+  /**
+  * Reserves names {@code baseName[_N]ext} with the same N in each of the
+  * directories of the files, the directory of the first file defines the
+  * order of N.
+  *
+  * @param baseName a base name of the files.
+  * @param files files the names are reserved for.
+  * @param exts extensions of the files including the leading dot.
+  * @return reserved names in the order of the files.
+  * @throws IOException if a directory can not be listed.
+  */
+  String[] reserve(String baseName, File[] files, String[] exts) throws IOException {
+    DirectoryNames[] dirNames = new DirectoryNames[files.length];
+    try {
+      for (int i = 0; i < files.length; i++) {
+        dirNames[i] = pin(files[i].getParentFile());
+      }
+      AtomicInteger counter = dirNames[0].counters.computeIfAbsent(baseName + exts[0],
+          key -> new AtomicInteger());
+      String[] names = new String[files.length];
+      while (true) {
+        int count = counter.getAndIncrement();
+        String countedName = count == 0 ? baseName : String.format("%s_%s", baseName, count);
+        Reservation reservation = new Reservation(counter, count);
+        int reserved = 0;
+        while (reserved < names.length) {
+          names[reserved] = countedName + exts[reserved];
+          if (! dirNames[reserved].reserve(names[reserved], files[reserved], reservation)) {
+            break;
+          }
+          reserved++;
+        }
+        if (reserved == names.length) {
+          return names;
+        }
+        for (int i = 0; i < reserved; i++) {
+          dirNames[i].names.remove(names[i]);
+          dirNames[i].pending.remove(names[i]);
+        }
+      }
+    } finally {
+      for (DirectoryNames pinned : dirNames) {
+        if (null != pinned) {
+          pinned.users.decrementAndGet();
+        }
+      }
+    }
+  }
+
+  /**
+  * Finds the files the reserved name collides with.
+  *
+  * @param dir a directory of the name.
+  * @param baseName a base name of the file.
+  * @param ext an extension of the file including the leading dot.
+  * @param name a name {@code baseName[_N]ext} reserved in the directory.
+  * @return files of the names {@code baseName[_M]ext} with M less than N
+  *     mapped to the files holding them now, in the order of M. A file
+  *     reserved a name for is at the name once it is renamed and at its own
+  *     name before.
+  * @throws IOException if the directory can not be listed.
+  */
+  Map<File, File> getHolders(File dir, String baseName, String ext, String name)
+      throws IOException
+  {
+    DirectoryNames dirNames = get(dir);
+    Map<File, File> holders = new LinkedHashMap<>();
+    for (int count = 0; ; count++) {
+      String countedName = (count == 0 ? baseName : String.format("%s_%s", baseName, count))
+          + ext;
+      if (countedName.equals(name)) {
+        return holders;
+      }
+      File holder = dirNames.names.get(countedName);
+      if (null != holder) {
+        File file = new File(dir, countedName);
+        holders.put(file, holder == dirNames.dir || handles.exists(file) ? file : holder);
+      }
+    }
+  }
+
+  /**
+  * Frees a name which is not taken any more, either a reserved name which
+  * has not been used or an old name of a renamed file.
+  */
+  void release(File dir, String name) {
+    DirectoryNames dirNames = dirs.get(dir);
+    if (null != dirNames) {
+      dirNames.names.remove(name);
+      Reservation reservation = dirNames.pending.remove(name);
+      if (null != reservation) {
+        reservation.counter.accumulateAndGet(reservation.count, Math::min);
+      }
+    }
+  }
+
+  /**
+  * Keeps a reserved name as taken, the file has been renamed to it or the
+  * rename has been planned for good. The directory of a name is not kept
+  * for it any more.
+  */
+  void commit(File dir, String name) {
+    DirectoryNames dirNames = dirs.get(dir);
+    if (null != dirNames) {
+      dirNames.pending.remove(name);
+    }
+  }
+
+  /**
+  * @param baseName a base name of the files.
+  * @param name a file name.
+  * @param ext an extension of the file including the leading dot.
+  * @return true if the name is {@code baseName[_N]ext}.
+  */
+  static boolean isReservable(String baseName, String name, String ext) {
+    if (! name.startsWith(baseName) || ! name.endsWith(ext)) {
+      return false;
+    }
+    if (name.length() == baseName.length() + ext.length()) {
+      return true;
+    }
+    String suffix = name.substring(baseName.length(), name.length() - ext.length());
+    return suffix.matches("_[1-9][0-9]*");
+  }
+
+  private DirectoryNames get(File dir) throws IOException {
+    DirectoryNames dirNames = pin(dir);
+    dirNames.users.decrementAndGet();
+    return dirNames;
+  }
+
+  /**
+  * @return names of the directory kept until the caller decrements its users.
+  */
+  private DirectoryNames pin(File dir) throws IOException {
+    DirectoryNames dirNames;
+    synchronized (dirs) {
+      dirNames = dirs.get(dir);
+      if (null == dirNames) {
+        dirNames = new DirectoryNames(dir, handles);
+        dirs.put(dir, dirNames);
+      }
+      dirNames.users.incrementAndGet();
+    }
+    try {
+      dirNames.load();
+    } catch (IOException e) {
+      dirNames.users.decrementAndGet();
+      throw e;
+    }
+    return dirNames;
+  }
+
+  /**
+   * A count of a base name handed out, the counter is lowered to it if the
+   * name is released.
+   */
+  private static final class Reservation {
+    private final AtomicInteger counter;
+    private final int count;
+
+    Reservation(AtomicInteger counter, int count) {
+      this.counter = counter;
+      this.count = count;
+    }
+  }
+
+  private static final class DirectoryNames {
+    private final File dir;
+    private final DirectoryHandles handles;
+    // a name maps to the file reserved it or to the directory if it is listed
+    private final ConcurrentMap<String, File> names = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+    // reserved names neither released nor committed yet
+    private final ConcurrentMap<String, Reservation> pending = new ConcurrentHashMap<>();
+    // threads reserving names in the directory
+    private final AtomicInteger users = new AtomicInteger();
+    private boolean loaded;
+
+    DirectoryNames(File dir, DirectoryHandles handles) {
+      this.dir = dir;
+      this.handles = handles;
+    }
+
+    synchronized void load() throws IOException {
+      if (loaded) {
+        return;
+      }
+      try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir.toPath())) {
+        for (Path path : dirStream) {
+          names.put(path.getFileName().toString(), dir);
+        }
+      } catch (DirectoryIteratorException e) {
+        throw e.getCause();
+      }
+      loaded = true;
+    }
+
+    /**
+    * @return true if the name was free. A name the listing does not know of
+    *     is checked on the file system as it may have been created since.
+    */
+    boolean reserve(String name, File file, Reservation reservation) {
+      if (null != names.putIfAbsent(name, file)) {
+        return false;
+      }
+      if (handles.exists(new File(dir, name))) {
+        names.put(name, dir);
+        return false;
+      }
+      pending.put(name, reservation);
+      return true;
+    }
+
+    boolean isPinned() {
+      return users.get() > 0 || ! pending.isEmpty();
+    }
+  }
+}
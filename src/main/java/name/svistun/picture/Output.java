@@ -0,0 +1,393 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-file output of a run, printed by a background thread.
+ * <p>
+ * Callers queue lines and go on, the printer thread formats the lines and
+ * prints them in batches with a single write and flush per batch, so
+ * neither the stream lock nor a flush per line is paid per file. A batch
+ * gathers lines until none comes for a few milliseconds or the batch is
+ * full, a caller waiting for the lines to be printed ends it at once.
+ * <p>
+ * Lines are printed as human-readable text by default, or as JSON objects
+ * of source, target, outcome and reason, one per line. Until
+ * {@link #open(Verbosity, Format)} is called lines are printed as text on the
+ * calling thread.
+ */
+public final class Output {
+
+  /**
+   * Lines printed.
+   */
+  public enum Verbosity {
+    /** Failures and errors only. */
+    QUIET,
+    /** Renames, skipped and duplicate files, failures and errors. */
+    NORMAL,
+    /** The date taken of every picture read as well. */
+    VERBOSE
+  }
+
+  public enum Format {
+    TEXT,
+    NDJSON
+  }
+
+  private enum Outcome {
+    INFO("info", Verbosity.NORMAL, false),
+    READ("read", Verbosity.VERBOSE, false),
+    RENAMED("renamed", Verbosity.NORMAL, false),
+    PLANNED("planned", Verbosity.NORMAL, false),
+    SKIPPED("skipped", Verbosity.NORMAL, false),
+    DUPLICATE("duplicate", Verbosity.NORMAL, false),
+    FAILED("failed", Verbosity.QUIET, true),
+    ERROR("error", Verbosity.QUIET, true),
+    // lines of worker processes, printed as they are
+    FORWARDED(null, Verbosity.QUIET, false),
+    FORWARDED_ERROR(null, Verbosity.QUIET, true);
+
+    private final String jsonName;
+    private final Verbosity verbosity;
+    private final boolean error;
+
+    Outcome(String jsonName, Verbosity verbosity, boolean error) {
+      this.jsonName = jsonName;
+      this.verbosity = verbosity;
+      this.error = error;
+    }
+  }
+
+  private static final int QUEUE_CAPACITY = 8192;
+  private static final int BATCH_SIZE = 1024;
+  private static final long LINGER_MILLIS = 5;
+  private static volatile Verbosity verbosity = Verbosity.NORMAL;
+  private static volatile Format format = Format.TEXT;
+  private static volatile Printer printer;
+
+  private Output() {}
+
+  /**
+  * Starts printing lines on a background thread.
+  */
+  static synchronized void open(Verbosity verbosity, Format format) {
+    Output.verbosity = verbosity;
+    Output.format = format;
+    if (null == printer) {
+      printer = new Printer();
+      printer.start();
+    }
+  }
+
+  /**
+  * Waits until the lines queued are printed. Output printed straight to the
+  * standard streams has to wait for it to keep its place.
+  */
+  static void flush() {
+    Printer printer = Output.printer;
+    if (null != printer) {
+      printer.await(new Line(null, null, null, null, null));
+    }
+  }
+
+  /**
+  * Prints the lines queued and stops the background thread.
+  */
+  static synchronized void close() {
+    Printer printer = Output.printer;
+    if (null != printer) {
+      Output.printer = null;
+      printer.await(Printer.END);
+    }
+  }
+
+  /**
+  * A message of the run which is not about a file.
+  */
+  static void info(String message) {
+    print(Outcome.INFO, null, null, message);
+  }
+
+  /**
+  * The file has been renamed to the target, or would be renamed on a dry run.
+  */
+  static void renamed(File source, File target, boolean dryRun) {
+    print(dryRun ? Outcome.PLANNED : Outcome.RENAMED, source, target, null);
+  }
+
+  /**
+  * The file can not be renamed to the target.
+  */
+  static void failed(File source, File target) {
+    print(Outcome.FAILED, source, target, null);
+  }
+
+  /**
+  * The picture has been read, its date taken is known.
+  */
+  static void read(Picture picture) {
+    if (verbosity.compareTo(Outcome.READ.verbosity) >= 0) {
+      print(Outcome.READ, picture.getPictureFile(), null, "%s is taken at %s.",
+          picture, picture.getDateTaken());
+    }
+  }
+
+  /**
+  * The file is left as it is.
+  *
+  * @param source a file or a directory.
+  * @param message a message or a format of the message if arguments are given.
+  */
+  static void skipped(File source, String message, Object... args) {
+    print(Outcome.SKIPPED, source, null, message, args);
+  }
+
+  /**
+  * The file has the same content as the original, the target of the line.
+  */
+  static void duplicate(File source, File original) {
+    print(Outcome.DUPLICATE, source, original, "File [%s] is a duplicate of [%s].",
+        source.getAbsoluteFile(), original.getAbsoluteFile());
+  }
+
+  /**
+  * The file can not be processed.
+  *
+  * @param source a file or a directory.
+  * @param message a message or a format of the message if arguments are given.
+  */
+  static void error(File source, String message, Object... args) {
+    print(Outcome.ERROR, source, null, message, args);
+  }
+
+  /**
+  * Prints a line of a worker process as it is, the worker has applied the
+  * verbosity and the format already.
+  *
+  * @param error true if the line comes from the error stream of the worker.
+  */
+  static void forward(String line, boolean error) {
+    print(error ? Outcome.FORWARDED_ERROR : Outcome.FORWARDED, null, null, line);
+  }
+
+  private static void print(Outcome outcome,
+      File source,
+      File target,
+      String message,
+      Object... args)
+  {
+    if (verbosity.compareTo(outcome.verbosity) < 0) {
+      return;
+    }
+    Line line = new Line(outcome, source, target, message, args);
+    Printer printer = Output.printer;
+    if (null == printer || ! printer.offer(line)) {
+      // not opened, closed or interrupted while the queue is full
+      PrintStream stream = line.isError() ? System.err : System.out;
+      stream.println(line.format());
+    }
+  }
+
+  /**
+  * @return the value as a JSON string, null as JSON null.
+  */
+  static String toJson(String value) {
+    if (null == value) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  /**
+   * A line to print, formatted by the printer thread.
+   */
+  private static final class Line {
+    private final Outcome outcome;
+    private final File source;
+    private final File target;
+    private final String message;
+    private final Object[] args;
+    private final CountDownLatch printed;
+
+    Line(Outcome outcome, File source, File target, String message, Object[] args) {
+      this.outcome = outcome;
+      this.source = source;
+      this.target = target;
+      this.message = message;
+      this.args = args;
+      this.printed = null == outcome ? new CountDownLatch(1) : null;
+    }
+
+    boolean isError() {
+      return outcome.error && (format == Format.TEXT || null == outcome.jsonName);
+    }
+
+    String format() {
+      if (null == outcome.jsonName) {
+        return message;
+      }
+      String reason = null == args || args.length == 0
+          ? message
+          : String.format(message, args);
+      if (format == Format.NDJSON) {
+        return String.format("{\"source\":%s,\"target\":%s,\"outcome\":\"%s\",\"reason\":%s}",
+            toJson(null == source ? null : source.getAbsolutePath()),
+            toJson(null == target ? null : target.getAbsolutePath()),
+            outcome.jsonName,
+            toJson(reason));
+      }
+      switch (outcome) {
+        case RENAMED:
+        case PLANNED:
+          return String.format("%s --> %s", source.getAbsoluteFile(), target.getName());
+        case FAILED:
+          return String.format("%s -X-> %s", source.getAbsoluteFile(), target.getName());
+        default:
+          return reason;
+      }
+    }
+  }
+
+  /**
+   * The background thread printing queued lines.
+   */
+  private static final class Printer extends Thread {
+    private static final Line END = new Line(null, null, null, null, null);
+    private final BlockingQueue<Line> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    Printer() {
+      super("picture-output");
+      setDaemon(true);
+    }
+
+    /**
+    * Queues the line, waits for room if the queue is full.
+    *
+    * @return false if the thread is interrupted.
+    */
+    boolean offer(Line line) {
+      try {
+        queue.put(line);
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    /**
+    * Queues the marker and waits until the lines before it are printed.
+    */
+    void await(Line marker) {
+      if (! offer(marker)) {
+        return;
+      }
+      try {
+        if (marker == END) {
+          join();
+        } else {
+          marker.printed.await();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public void run() {
+      List<Line> batch = new ArrayList<>(BATCH_SIZE);
+      StringBuilder out = new StringBuilder();
+      StringBuilder err = new StringBuilder();
+      try {
+        while (true) {
+          Line next = queue.take();
+          // a batch gathers while lines keep coming, a marker is waited for
+          while (null != next) {
+            batch.add(next);
+            if (null == next.outcome || batch.size() == BATCH_SIZE) {
+              break;
+            }
+            next = queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          for (Line line : batch) {
+            if (null == line.outcome) {
+              flush(out, err);
+              if (line == END) {
+                return;
+              }
+              line.printed.countDown();
+            } else if (line.isError()) {
+              // lines of both streams keep their order on a terminal
+              write(System.out, out);
+              err.append(line.format()).append(System.lineSeparator());
+            } else {
+              write(System.err, err);
+              out.append(line.format()).append(System.lineSeparator());
+            }
+          }
+          flush(out, err);
+          batch.clear();
+        }
+      } catch (InterruptedException e) {
+        flush(out, err);
+      }
+    }
+
+    private static void flush(StringBuilder out, StringBuilder err) {
+      write(System.out, out);
+      write(System.err, err);
+    }
+
+    private static void write(PrintStream stream, StringBuilder sb) {
+      if (sb.length() == 0) {
+        return;
+      }
+      stream.print(sb);
+      stream.flush();
+      sb.setLength(0);
+    }
+  }
+}
@@ -26,16 +26,18 @@ package name.svistun.picture;
 
 import java.io.File;
 import java.util.Date;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
 
 public abstract class Picture {
+  private static final Pattern PATTERN_PICTURE_FILE = Pattern.compile("(.+)(\\.(.+))");
   private Date dateTaken;
+  private TimeZone timeZone;
   private File pictureFile, paramFile;
-  private Pattern patternPictureFile, patternParamsFile;
+  private Pattern patternParamsFile;
   
   public Picture(File pictureFile) {
     this.pictureFile = pictureFile;
-    patternPictureFile = Pattern.compile("(.+)(\\.(.+))");
   }
   
   /**
@@ -52,6 +54,23 @@ public abstract class Picture {
     this.dateTaken = dateTaken;
   }
 
+  /**
+  * @return a time zone the date taken is local to or null if the picture
+  *     does not tell it. The date taken is the local time kept as of GMT
+  *     either way.
+  */
+  public TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  /**
+  * @param timeZone a time zone the date taken is local to, null if it is
+  *     unknown.
+  */
+  public void setTimeZone(TimeZone timeZone) {
+    this.timeZone = timeZone;
+  }
+
   /**
   * @return a file with parameters that tune the picture.
   */
@@ -84,7 +103,7 @@ public abstract class Picture {
   * @return a pattern that are matched with the picture file.
   */
   public Pattern getPatternPictureFile() {
-    return patternPictureFile;
+    return PATTERN_PICTURE_FILE;
   }
   
   /**
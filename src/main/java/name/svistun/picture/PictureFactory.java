@@ -24,36 +24,149 @@ package name.svistun.picture;
  * SOFTWARE.
  */
 
-import name.svistun.picture.type.Exif;
-import name.svistun.picture.type.Mov;
-import name.svistun.picture.type.Mp4;
-
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import com.drew.imaging.ImageProcessingException;
 
+/**
+ * Creates pictures of the {@link MediaTypes} registered.
+ * <p>
+ * A type is found by the file extension. If sniffing is on, the first bytes
+ * of a file are read as well: a picture of an unknown or a wrong extension
+ * is read by the type of its content, a file of a picture extension and
+ * other content is rejected without parsing its metadata.
+ */
 public final class PictureFactory {
-  public static final List<String> EXIF_EXTS = Arrays.asList("nef", "jpg");
-  public static final List<String> MOV_EXTS = Arrays.asList("mov");
-  public static final List<String> MP4_EXTS = Arrays.asList("mp4");
-  
+  private static volatile boolean sniffing;
+
   private PictureFactory() {}
-  
+
+  /**
+  * @param sniffing true to find types of pictures by their content as well.
+  */
+  public static void configure(boolean sniffing) {
+    PictureFactory.sniffing = sniffing;
+  }
+
   public static Picture getPicture(File pictureFile) throws IOException,
       ImageProcessingException, NotImageFileException
   {
-    String pictureFileName = pictureFile.getName();
-    String pictureFileExt = pictureFileName.substring(pictureFileName.lastIndexOf('.') + 1).toLowerCase();
-    if (EXIF_EXTS.contains(pictureFileExt)) {
-      return new Exif(pictureFile);
-    } else if (MOV_EXTS.contains(pictureFileExt)) {
-      return new Mov(pictureFile);
-    } else if (MP4_EXTS.contains(pictureFileExt)) {
-      return new Mp4(pictureFile);
-    }
-    return null;
+    return getPicture(pictureFile, null, null);
+  }
+
+  /**
+  * Creates a picture from the cache if it has a valid entry of the file and
+  * caches the picture read from the file otherwise.
+  *
+  * @param pictureFile a picture file.
+  * @param cache a metadata cache, null to read the file anyway.
+  * @return a picture or null if the file is not recognized.
+  */
+  public static Picture getPicture(File pictureFile, MetadataCache cache) throws IOException,
+      ImageProcessingException, NotImageFileException
+  {
+    return getPicture(pictureFile, null, cache);
+  }
+
+  /**
+  * Creates a picture like {@link #getPicture(File, MetadataCache)} with
+  * attributes of the file read while listing its directory.
+  *
+  * @param attrs attributes of the picture file, null to read them if needed.
+  */
+  public static Picture getPicture(File pictureFile,
+      BasicFileAttributes attrs,
+      MetadataCache cache)
+      throws IOException, ImageProcessingException, NotImageFileException
+  {
+    MediaType extType = MediaTypes.forName(pictureFile.getName());
+    Picture picture = getCachedPicture(pictureFile, extType, attrs, cache);
+    if (null != picture) {
+      return picture;
+    }
+    MediaType type = extType;
+    if (sniffing) {
+      type = sniff(pictureFile, extType);
+      if (extType != type) {
+        picture = getCachedPicture(pictureFile, type, attrs, cache);
+        if (null != picture) {
+          return picture;
+        }
+      }
+    }
+    if (null == type) {
+      return null;
+    }
+    picture = type.read(pictureFile);
+    if (null != cache) {
+      cache.put(pictureFile, picture.getDateTaken(), picture.getTimeZone(),
+          picture.getParamFile());
+    }
+    return picture;
+  }
+
+  /**
+  * @param attrs attributes of the file, null to read them if needed.
+  * @param cache a metadata cache, null if there is no cache.
+  * @return true if getting a picture of the file reads the file, false if
+  *     the file is of no picture type or its picture is cached.
+  */
+  static boolean reads(File pictureFile, BasicFileAttributes attrs, MetadataCache cache) {
+    if (null == MediaTypes.forName(pictureFile.getName())) {
+      return sniffing;
+    }
+    try {
+      return null == cache || null == cache.get(pictureFile, attrs);
+    } catch (IOException e) {
+      // reading the picture reports the problem
+      return true;
+    }
+  }
+
+  /**
+  * @return a picture of the cache or null if the cache has no valid entry.
+  */
+  private static Picture getCachedPicture(File pictureFile,
+      MediaType type,
+      BasicFileAttributes attrs,
+      MetadataCache cache)
+      throws IOException
+  {
+    if (null == type || null == cache) {
+      return null;
+    }
+    MetadataCache.Entry entry = cache.get(pictureFile, attrs);
+    if (null == entry) {
+      return null;
+    }
+    Picture picture = type.cached(pictureFile, entry.getDateTaken(), entry.getParamFile());
+    if (null != picture) {
+      picture.setTimeZone(entry.getTimeZone());
+    }
+    return picture;
+  }
+
+  /**
+  * @param extType a type of the file extension, null if it is unknown.
+  * @return a type of the file content, null if the file is not a picture.
+  * @throws NotImageFileException if the file has a picture extension and
+  *     other content.
+  */
+  private static MediaType sniff(File pictureFile, MediaType extType)
+      throws NotImageFileException
+  {
+    MediaType type;
+    try {
+      type = MediaTypes.sniff(pictureFile);
+    } catch (IOException e) {
+      // let reading the picture report the problem
+      return extType;
+    }
+    if (null == type && null != extType) {
+      throw new NotImageFileException("the content is not of a known picture type.");
+    }
+    return type;
   }
 }
@@ -24,183 +24,726 @@ package name.svistun.picture;
  * SOFTWARE.
  */
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import com.drew.imaging.ImageProcessingException;
 import org.apache.commons.lang3.StringUtils;
 
 public final class PictureManager {
+  // a plan of a picture which is left as it is on purpose, it is not a failure
+  private static final RenamePlan UNCHANGED = new RenamePlan(null, null, null, null, null);
   private SimpleDateFormat sdf;
-          
+  private final boolean zoned;
+  private final int threads;
+  private final boolean virtualThreads;
+  private final DirectoryHandles dirs = new DirectoryHandles();
+  private final NameIndex names = new NameIndex(dirs);
+  private DuplicateFinder duplicates;
+  private CanonicalNames canonicalNames;
+
   public PictureManager(String dateFormat) {
+    this(dateFormat, Runtime.getRuntime().availableProcessors());
+  }
+
+  public PictureManager(String dateFormat, int threads) {
+    this(dateFormat, threads, false);
+  }
+
+  /**
+  * @param threads a number of threads reading picture metadata or, on
+  *     virtual threads, a number of pictures read at once.
+  * @param virtualThreads true to read every picture on a virtual thread, platform
+  *     threads are used if the JVM has no virtual threads.
+  */
+  public PictureManager(String dateFormat, int threads, boolean virtualThreads) {
     sdf = new SimpleDateFormat(dateFormat);
     sdf.setTimeZone(TimeZone.getTimeZone("GTM"));
+    zoned = hasTimeZone(dateFormat);
+    this.threads = threads;
+    if (virtualThreads && ! VirtualThreads.isAvailable()) {
+      Output.error(null,
+          "Virtual threads are not available, metadata is read by %s platform threads.",
+          threads);
+    }
+    this.virtualThreads = virtualThreads && VirtualThreads.isAvailable();
   }
   
   public void execute(CliOptions cliOptions) {
-    List<Picture> failedPictures = new ArrayList<>();
+    List<String> failedPictures = new ArrayList<>();
+    duplicates = null == cliOptions.getDuplicates()
+        ? null
+        : new DuplicateFinder(cliOptions.getDuplicates());
+    canonicalNames = new CanonicalNames(sdf.toPattern(), cliOptions.getVerifySample());
+    // workers of shards keep their own metrics
+    boolean sharded = cliOptions.getShards() > 1;
+    if (! sharded
+        && (cliOptions.getProgressPeriod() > 0 || null != cliOptions.getMetricsPath()))
+    {
+      Metrics.enable();
+    }
+    if (! sharded && cliOptions.getProgressPeriod() > 0) {
+      Metrics.startProgress(cliOptions.getProgressPeriod());
+    }
+    Output.open(cliOptions.getVerbosity(), cliOptions.getOutputFormat());
+    PictureWatcher watcher = null;
     try {
-      List<Picture> pictures = scanDir(cliOptions.getPictureDirPaths(),
-          cliOptions.getMaxDepth());
-      for (Picture picture : pictures) {
-        if (! rename(picture,
-            cliOptions.isDryRun()))
-        {
-          System.err.println(picture + " was not renamed.");
-          failedPictures.add(picture);
+      if (cliOptions.isWatch()) {
+        // files appearing while the paths are scanned are renamed once watching starts
+        watcher = new PictureWatcher(this, cliOptions.getMaxDepth(), cliOptions.isDryRun());
+        watcher.register(cliOptions.getPictureDirPaths());
+      }
+      if (null != cliOptions.getUndoPath()) {
+        undo(new File(cliOptions.getUndoPath()), cliOptions.isDryRun());
+      } else if (sharded) {
+        new ShardCoordinator(cliOptions).run(failedPictures);
+      } else {
+        RenameJournal.State resumed = null;
+        if (cliOptions.isResume()) {
+          resumed = resume(new File(cliOptions.getJournalPath()), failedPictures);
+        }
+        if (null != cliOptions.getApplyPlanPath()) {
+          applyPlan(cliOptions, resumed, failedPictures);
+        } else {
+          planAndApply(cliOptions, resumed, failedPictures);
         }
       }
-    } catch (IOException ex) {
-      System.err.println(ex.toString() + System.lineSeparator()
+    } catch (IOException | UncheckedIOException ex) {
+      Output.error(null, "%s", ex.toString() + System.lineSeparator()
           + StringUtils.join(ex.getStackTrace(), System.lineSeparator()));
+      Output.close();
       System.exit(1);
     }
-    if (failedPictures.size() > 0) {
+    Output.flush();
+    if (null != cliOptions.getShardFilePath()) {
+      // the coordinator reports failures of all the shards
+      try {
+        ShardCoordinator.writeFailed(new File(cliOptions.getShardFilePath()), failedPictures);
+      } catch (IOException ex) {
+        Output.error(new File(cliOptions.getShardFilePath()), "%s", ex);
+        Output.close();
+        System.exit(1);
+      }
+    } else if (failedPictures.size() > 0) {
       StringBuilder sb = new StringBuilder();
       sb.append("Failed to rename pictures:").append(System.lineSeparator());
-      for (Picture failedPicture : failedPictures) {
+      for (String failedPicture : failedPictures) {
         sb.append(String.format(
             "\t%s" + System.lineSeparator(),
             failedPicture));
       }
       System.err.println(sb);
     }
+    Metrics.stopProgress();
+    if (! sharded && null != cliOptions.getMetricsPath()) {
+      try {
+        Metrics.writeSummary(new File(cliOptions.getMetricsPath()), failedPictures.size());
+      } catch (IOException ex) {
+        Output.error(new File(cliOptions.getMetricsPath()),
+            "Metrics summary %s can not be written, %s",
+            cliOptions.getMetricsPath(),
+            ex.getMessage());
+      }
+    }
+    if (null != watcher) {
+      try {
+        watcher.watch();
+      } catch (IOException ex) {
+        Output.error(null, "%s", ex.toString() + System.lineSeparator()
+            + StringUtils.join(ex.getStackTrace(), System.lineSeparator()));
+        Output.close();
+        System.exit(1);
+      }
+    }
+    dirs.close();
+    Output.close();
   }
   
+  /**
+  * Collects all pictures of the directories in memory. {@link #execute(CliOptions)}
+  * renames pictures as soon as they are scanned instead.
+  */
   public List<Picture> scanDir(String[] pictureDirPaths,
       int maxDepth)
       throws IOException
   {
     List<Picture> pictures = new ArrayList<>();
-    List<File> dirs = new ArrayList<>();
-    for (String pictureDirPath : pictureDirPaths) {
-      dirs.add(new File(pictureDirPath));
-    }
-    int maxDepthCounter = maxDepth;
-    while (! dirs.isEmpty() && maxDepthCounter != 0) {
-      List<File> newDirs = new ArrayList<>();
-      for (File dir : dirs) {
-        File[] dirFiles = dir.listFiles();
-        if (null == dirFiles) {
-          System.err.println(String.format(
-              "Dir %s returned null at getting list of its files.",
-              dir.getAbsolutePath()));
-          continue;
+    new PicturePipeline(threads, virtualThreads, null).run(pictureDirPaths, maxDepth,
+        pictures::add);
+    return pictures;
+  }
+  
+  /**
+  * @return true if the file is a picture of a name the date format gives,
+  *     which is left without reading it.
+  */
+  boolean skipsByName(File file) {
+    return null != canonicalNames && canonicalNames.skips(file);
+  }
+
+  /**
+  * Reads a single picture file, plans its rename and applies the plan.
+  *
+  * @return the applied plan or null if the file is not renamed.
+  * @throws IOException if the file can not be read.
+  */
+  RenamePlan rename(File file, boolean dryRun) throws IOException {
+    PicturePipeline.ScanResult result = PicturePipeline.scan(file, null);
+    result.report();
+    Picture picture = result.getPicture();
+    if (null == picture) {
+      return null;
+    }
+    RenamePlan plan = plan(picture);
+    if (UNCHANGED == plan) {
+      return null;
+    }
+    if (null == plan || ! apply(plan, dryRun, null)) {
+      Output.error(picture.getPictureFile(), "%s was not renamed.", picture);
+      return null;
+    }
+    return plan;
+  }
+
+  /**
+  * @param shardFile a shard file of a worker, null if the process is not a
+  *     worker.
+  */
+  private MetadataCache openCache(File shardFile) {
+    try {
+      return new MetadataCache(MetadataCache.DEFAULT_FILE,
+          null == shardFile ? null : ShardCoordinator.getCacheDeltaFile(shardFile));
+    } catch (IOException e) {
+      Output.error(MetadataCache.DEFAULT_FILE,
+          "Metadata cache %s can not be used, %s",
+          MetadataCache.DEFAULT_FILE,
+          e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+  * Scans the pictures, plans their renames and applies the plans as soon as
+  * they are made. Plans are written to a plan file instead of being applied
+  * if the file is set. A worker scans the directories of its shard file
+  * rather than the paths.
+  */
+  private void planAndApply(CliOptions cliOptions,
+      RenameJournal.State resumed,
+      List<String> failedPictures)
+      throws IOException
+  {
+    boolean dryRun = cliOptions.isDryRun() || null != cliOptions.getWritePlanPath();
+    File shardFile = null == cliOptions.getShardFilePath()
+        ? null
+        : new File(cliOptions.getShardFilePath());
+    MetadataCache cache = cliOptions.isNoCache() ? null : openCache(shardFile);
+    try {
+      planAndApply(cliOptions, resumed, failedPictures, dryRun, shardFile, cache);
+    } finally {
+      // entries read before a failure are kept as well
+      if (null != cache) {
+        cache.close();
+      }
+    }
+  }
+
+  private void planAndApply(CliOptions cliOptions,
+      RenameJournal.State resumed,
+      List<String> failedPictures,
+      boolean dryRun,
+      File shardFile,
+      MetadataCache cache)
+      throws IOException
+  {
+    try (RenamePlanFile.Writer planWriter = null == cliOptions.getWritePlanPath()
+        ? null
+        : new RenamePlanFile.Writer(new File(cliOptions.getWritePlanPath()));
+        JournaledBatch batch = openBatch(cliOptions, dryRun, resumed, cache, failedPictures))
+    {
+      Consumer<Picture> consumer = picture -> {
+        RenamePlan plan = plan(picture);
+        if (UNCHANGED == plan) {
+          return;
         }
-        for (File file : dirFiles) {
-          if (file.isDirectory()) {
-            newDirs.add(file);
-          } else {
-            try {
-              Picture picture = PictureFactory.getPicture(file);
-              if (picture == null) {
-                System.out.println(String.format("File [%s] unrecognized.", file));
-                continue;
-              }
-              pictures.add(picture);
-            } catch (ImageProcessingException e) {
-              System.err.println(String.format(
-                  "File %s, %s",
-                  file.getAbsolutePath(),
-                  e.getMessage()));
-            } catch (NotImageFileException e) {
-              System.out.println(String.format(
-                  "Skip processing file %s as an image, %s",
-                  file.getAbsolutePath(),
-                  e.getMessage()));
-            }
+        try {
+          if (null != plan && null != batch) {
+            batch.add(plan, -1);
+          } else if (null == plan || ! apply(plan, dryRun, cache)) {
+            Output.error(picture.getPictureFile(), "%s was not renamed.", picture);
+            failedPictures.add(picture.toString());
+          } else if (null != planWriter) {
+            planWriter.write(plan);
           }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
         }
+      };
+      if (null == shardFile) {
+        new PicturePipeline(threads, virtualThreads, cache, true, canonicalNames).run(
+            cliOptions.getPictureDirPaths(), cliOptions.getMaxDepth(), consumer);
+      } else {
+        ShardCoordinator.Shard shard = ShardCoordinator.Shard.read(shardFile);
+        new PicturePipeline(threads, virtualThreads, cache, false, canonicalNames).run(
+            shard.getPaths(), shard.getMaxDepths(), consumer);
       }
-      dirs = newDirs;
-      maxDepthCounter--;
     }
-    return pictures;
   }
-  
-  private boolean rename(Picture picture, boolean dryRun) {
-    return  check(picture.getPictureFile(), picture.getPatternPictureFile(), picture.getDateTaken())
-      && (null == picture.getParamFile()
-            || check(picture.getParamFile(), picture.getPatternParamsFile(), picture.getDateTaken()))
-      && process(picture.getPictureFile(), picture.getPatternPictureFile(), picture.getDateTaken(), dryRun)
-      && (null == picture.getParamFile()
-            || process(picture.getParamFile(), picture.getPatternParamsFile(), picture.getDateTaken(), dryRun));
+
+  /**
+  * Applies plans of a plan file, no picture is read. A resumed run starts
+  * after the last plan committed to the journal.
+  */
+  private void applyPlan(CliOptions cliOptions,
+      RenameJournal.State resumed,
+      List<String> failedPictures)
+      throws IOException
+  {
+    long planPosition = null == resumed ? 0 : Math.max(0, resumed.getPlanPosition());
+    try (RenamePlanFile.Reader planReader = new RenamePlanFile.Reader(
+            new File(cliOptions.getApplyPlanPath()), planPosition);
+        JournaledBatch batch = openBatch(cliOptions, cliOptions.isDryRun(), resumed, null,
+            failedPictures))
+    {
+      // plans of the interrupted batch have been completed by resume already, a plan
+      // was journaled as a rename of the picture and a rename of its parameter file
+      int resumedRenames = null == resumed ? 0 : resumed.getUncommittedRenames().size();
+      RenamePlan plan;
+      while (null != (plan = planReader.read())) {
+        Metrics.discovered();
+        Metrics.processed();
+        if (resumedRenames > 0) {
+          resumedRenames -= null == plan.getParamFile() ? 1 : 2;
+          if (dirs.exists(plan.getNewPictureFile()) && ! dirs.exists(plan.getPictureFile())) {
+            continue;
+          }
+        }
+        if (! canApply(plan.getNewPictureFile())
+            || (null != plan.getParamFile() && ! canApply(plan.getNewParamFile())))
+        {
+          Output.error(plan.getPictureFile(), "%s was not renamed.", plan);
+          failedPictures.add(plan.toString());
+        } else if (null != batch) {
+          batch.add(plan, planReader.getPosition());
+        } else if (! apply(plan, cliOptions.isDryRun(), null)) {
+          Output.error(plan.getPictureFile(), "%s was not renamed.", plan);
+          failedPictures.add(plan.toString());
+        }
+      }
+      Metrics.discoveryFinished();
+    }
   }
-  
-  private boolean check(File file,
-      Pattern pattern,
-      Date dateTaken)
+
+  /**
+  * @return a batch of renames journaled to the journal file or null if no
+  *     journal is kept.
+  */
+  private JournaledBatch openBatch(CliOptions cliOptions,
+      boolean dryRun,
+      RenameJournal.State resumed,
+      MetadataCache cache,
+      List<String> failedPictures)
+      throws IOException
   {
-    Matcher matcher = pattern.matcher(file.getName());
-    if (matcher.matches()) {
-      File newFile = new File(file.getParent()
-          + File.separator
-          + sdf.format(dateTaken)
-          + matcher.group(2));
-      int count = 0;
-      while (newFile.exists()) {
-        if (file.getName().equals(newFile.getName())) {
-          System.out.println(String.format("File [%s] already has properly name.",
-              file.getAbsoluteFile()));
-          return false;
+    if (dryRun || null == cliOptions.getJournalPath()) {
+      return null;
+    }
+    return new JournaledBatch(new RenameJournal(new File(cliOptions.getJournalPath()),
+        null == resumed ? 0 : resumed.getLength()), cache, failedPictures);
+  }
+
+  /**
+  * Completes the renames of the batch which was interrupted. A rename took
+  * effect if its new file exists.
+  *
+  * @return the state of the journal.
+  */
+  private RenameJournal.State resume(File journalFile, List<String> failedPictures)
+      throws IOException
+  {
+    RenameJournal.State state = RenameJournal.read(journalFile);
+    for (File[] rename : state.getUncommittedRenames()) {
+      // both names of the same file are left by a rename interrupted after the link
+      boolean done = dirs.exists(rename[1]) && ! dirs.isLinked(rename[0], rename[1]);
+      if (! done && ! process(rename[0], rename[1], false)) {
+        failedPictures.add(rename[0].getAbsolutePath());
+      }
+    }
+    return state;
+  }
+
+  /**
+  * Renames the files of a journal back in the reverse order.
+  */
+  private void undo(File journalFile, boolean dryRun) throws IOException {
+    RenameStore renames = RenameJournal.read(journalFile).getRenames();
+    for (int i = renames.size() - 1; i >= 0; i--) {
+      File file = renames.getFile(i);
+      File newFile = renames.getNewFile(i);
+      if (dirs.exists(newFile) && ! dirs.exists(file)) {
+        process(newFile, file, dryRun);
+      }
+    }
+  }
+
+  /**
+  * Makes up new names of the picture and its parameter file and reserves
+  * them. A picture given a taken name is compared with the files of the
+  * name if copies are looked for.
+  *
+  * @return a plan, {@link #UNCHANGED} if the picture already has its name,
+  *     has no extension or is a copy to be left as it is, null if the
+  *     picture can not be renamed.
+  */
+  private RenamePlan plan(Picture picture) {
+    File pictureFile = picture.getPictureFile();
+    File paramFile = picture.getParamFile();
+    Matcher pictureMatcher = picture.getPatternPictureFile().matcher(pictureFile.getName());
+    Matcher paramMatcher = null == paramFile
+        ? null
+        : picture.getPatternParamsFile().matcher(paramFile.getName());
+    if (! pictureMatcher.matches()) {
+      // a picture recognized by its content, its type is not told by its name
+      Output.skipped(pictureFile,
+          "File [%s] has no extension, it is left as it is.",
+          pictureFile.getAbsoluteFile());
+      return UNCHANGED;
+    }
+    if (null != paramMatcher && ! paramMatcher.matches()) {
+      return null;
+    }
+    String baseName = format(picture);
+    if (! check(pictureFile, baseName, pictureMatcher.group(2))
+        || (null != paramFile && ! check(paramFile, baseName, paramMatcher.group(2))))
+    {
+      return UNCHANGED;
+    }
+    if (null != canonicalNames && canonicalNames.matches(pictureFile.getName())) {
+      // a name of the date format which is not of the date taken
+      Metrics.misnamed();
+    }
+    File[] files = null == paramFile
+        ? new File[] {pictureFile}
+        : new File[] {pictureFile, paramFile};
+    String[] exts = null == paramFile
+        ? new String[] {pictureMatcher.group(2)}
+        : new String[] {pictureMatcher.group(2), paramMatcher.group(2)};
+    String[] newNames;
+    try {
+      // the sidecar gets the same suffix as the picture to stay paired with it
+      long start = Metrics.start();
+      newNames = names.reserve(baseName, files, exts);
+      Metrics.stop(Metrics.Stage.RESERVE_NAME, start);
+    } catch (IOException e) {
+      Output.error(pictureFile,
+          "Names in [%s] can not be listed, %s",
+          pictureFile.getParent(),
+          e.getMessage());
+      return null;
+    }
+    File linkedOriginal = null;
+    if (null != duplicates && ! newNames[0].equals(baseName + exts[0])) {
+      Map.Entry<File, File> original = findOriginal(pictureFile, baseName, exts[0],
+          newNames[0]);
+      if (null != original) {
+        Output.duplicate(pictureFile, original.getValue());
+        if (duplicates.getPolicy() == DuplicateFinder.Policy.SKIP) {
+          for (int i = 0; i < files.length; i++) {
+            names.release(files[i].getParentFile(), newNames[i]);
+          }
+          return UNCHANGED;
         }
-        count++;
-        newFile = new File(file.getParent()
-            + File.separator
-            + sdf.format(dateTaken)
-            + String.format("_%s", count)
-            + matcher.group(2));
-      }
-      if (! file.canWrite() || ! newFile.getParentFile().canWrite()) {
-        System.err.println(String.format(
-            "Access problems. File [%s] can not be renamed.",
-            file.getAbsoluteFile()));
-        return false;
+        if (duplicates.getPolicy() == DuplicateFinder.Policy.HARDLINK) {
+          // linked when the plan is applied, after a journal has recorded it and
+          // after the original has been renamed to its name
+          linkedOriginal = original.getKey();
+        }
+      }
+    }
+    RenamePlan plan = new RenamePlan(pictureFile, newNames[0],
+        paramFile, null == paramFile ? null : newNames[1],
+        picture.getDateTaken(), picture.getTimeZone(), linkedOriginal);
+    if (! canRename(pictureFile, plan.getNewPictureFile())
+        || (null != paramFile && ! canRename(paramFile, plan.getNewParamFile())))
+    {
+      for (int i = 0; i < files.length; i++) {
+        names.release(files[i].getParentFile(), newNames[i]);
+      }
+      return null;
+    }
+    return plan;
+  }
+
+  /**
+  * Renames the picture and its parameter file as planned.
+  *
+  * @return true if the files are renamed.
+  */
+  private boolean apply(RenamePlan plan, boolean dryRun, MetadataCache cache) {
+    if (! dryRun && null != plan.getOriginal()) {
+      link(plan.getPictureFile(), plan.getOriginal());
+    }
+    if (! process(plan.getPictureFile(), plan.getNewPictureFile(), dryRun)) {
+      if (null != plan.getParamFile()) {
+        names.release(plan.getNewParamFile().getParentFile(), plan.getNewParamFile().getName());
+      }
+      return false;
+    }
+    if (null != plan.getParamFile()
+        && ! process(plan.getParamFile(), plan.getNewParamFile(), dryRun))
+    {
+      return false;
+    }
+    if (! dryRun && null != cache) {
+      // keep the renamed sidecar so that the next run does not read the picture
+      cache.put(plan.getNewPictureFile(), plan.getDateTaken(), plan.getTimeZone(),
+          plan.getNewParamFile());
+    }
+    Metrics.renamed();
+    return true;
+  }
+  
+  /**
+  * @return a base name of the picture. Time zone letters of the date format
+  *     stand for the time zone of the picture if it is known and for GMT
+  *     otherwise.
+  */
+  private String format(Picture picture) {
+    TimeZone timeZone = picture.getTimeZone();
+    if (! zoned || null == timeZone) {
+      return sdf.format(picture.getDateTaken());
+    }
+    // the date taken is the local time kept as of GMT, it is moved to the zone
+    SimpleDateFormat zonedSdf = (SimpleDateFormat) sdf.clone();
+    zonedSdf.setTimeZone(timeZone);
+    return zonedSdf.format(new Date(picture.getDateTaken().getTime()
+        - timeZone.getOffset(picture.getDateTaken().getTime())));
+  }
+
+  /**
+  * @return true if the date format has time zone letters out of quotes.
+  */
+  private static boolean hasTimeZone(String dateFormat) {
+    boolean quoted = false;
+    for (int i = 0; i < dateFormat.length(); i++) {
+      char c = dateFormat.charAt(i);
+      if (c == '\'') {
+        quoted = ! quoted;
+      } else if (! quoted && (c == 'z' || c == 'Z' || c == 'X')) {
+        return true;
       }
-      return true;
     }
     return false;
   }
 
+  /**
+  * @return a file of the same content as the picture among the files of the
+  *     names the new name of the picture collides with, mapped from its file
+  *     of the name, null if there is no one.
+  */
+  private Map.Entry<File, File> findOriginal(File pictureFile,
+      String baseName,
+      String ext,
+      String newName)
+  {
+    try {
+      Map<File, File> holders = names.getHolders(pictureFile.getParentFile(), baseName, ext,
+          newName);
+      File original = duplicates.find(pictureFile, new ArrayList<>(holders.values()));
+      for (Map.Entry<File, File> holder : holders.entrySet()) {
+        if (holder.getValue() == original) {
+          return holder;
+        }
+      }
+      return null;
+    } catch (IOException e) {
+      Output.error(pictureFile,
+          "File [%s] can not be compared with the files of its name, %s",
+          pictureFile.getAbsoluteFile(),
+          e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+  * Replaces the file with a hard link to the original, the file keeps its
+  * name and is renamed as planned.
+  */
+  private void link(File file, File original) {
+    Path path = file.toPath();
+    Path link = path.resolveSibling("." + path.getFileName() + ".link");
+    boolean linked = false;
+    try {
+      if (Files.isSameFile(path, original.toPath())) {
+        return;
+      }
+      Files.createLink(link, original.toPath());
+      linked = true;
+      Files.move(link, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | UnsupportedOperationException e) {
+      Output.error(file,
+          "File [%s] can not be replaced with a link to [%s], %s",
+          file.getAbsoluteFile(),
+          original.getAbsoluteFile(),
+          e.getMessage());
+      if (linked) {
+        try {
+          Files.deleteIfExists(link);
+        } catch (IOException ex) {
+          Output.error(link.toFile(), "Link [%s] can not be deleted.", link);
+        }
+      }
+    }
+  }
+
+  private boolean check(File file,
+      String baseName,
+      String ext)
+  {
+    if (NameIndex.isReservable(baseName, file.getName(), ext)) {
+      Output.skipped(file, "File [%s] already has properly name.", file.getAbsoluteFile());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+  * @return true if the planned name is still free.
+  */
+  private boolean canApply(File newFile) {
+    if (dirs.exists(newFile)) {
+      Output.error(newFile,
+          "File [%s] already exists.",
+          newFile.getAbsoluteFile());
+      return false;
+    }
+    return true;
+  }
+
+  private boolean canRename(File file, File newFile) {
+    // access(2) has no form relative to a directory handle
+    if (! file.canWrite() || ! dirs.isWritable(newFile.getParentFile())) {
+      Output.error(file,
+          "Access problems. File [%s] can not be renamed.",
+          file.getAbsoluteFile());
+      names.release(newFile.getParentFile(), newFile.getName());
+      return false;
+    }
+    return true;
+  }
+
   private boolean process(File file,
-      Pattern pattern,
-      Date dateTaken,
+      File newFile,
       boolean dryRun)
   {
-    Matcher matcher = pattern.matcher(file.getName());
-    if (matcher.matches()) {
-      File newFile = new File(file.getParent()
-          + File.separator
-          + sdf.format(dateTaken)
-          + matcher.group(2));
-      int count = 0;
-      while (newFile.exists()) {
-        count++;
-        newFile = new File(file.getParent()
-            + File.separator
-            + sdf.format(dateTaken)
-            + String.format("_%s", count)
-            + matcher.group(2));
-      }
-      if (! dryRun) {
-        if (! file.renameTo(newFile)) {
-          System.err.println(String.format("%s -X-> %s",
-              file.getAbsoluteFile(),
-              newFile.getName()));
-          return false;
-        }
+    if (! dryRun) {
+      long start = Metrics.start();
+      Object event = StageEvents.begin(Metrics.Stage.RENAME);
+      boolean renamed;
+      try {
+        dirs.rename(file, newFile);
+        renamed = true;
+      } catch (FileAlreadyExistsException e) {
+        // the planned name has been taken since it was checked
+        Output.error(newFile, "File [%s] already exists.", newFile.getAbsoluteFile());
+        renamed = false;
+      } catch (IOException e) {
+        renamed = false;
+      }
+      Metrics.stop(Metrics.Stage.RENAME, start);
+      StageEvents.end(event, renamed ? newFile : file,
+          newFile.getName().substring(newFile.getName().lastIndexOf('.') + 1), renamed);
+      if (! renamed) {
+        Output.failed(file, newFile);
+        names.release(newFile.getParentFile(), newFile.getName());
+        return false;
       }
-      System.out.println(String.format("%s --> %s",
-          file.getAbsoluteFile(), newFile.getName()));
     }
+    names.commit(newFile.getParentFile(), newFile.getName());
+    names.release(file.getParentFile(), file.getName());
+    Output.renamed(file, newFile, dryRun);
     return true;
   }
+
+  /**
+   * Renames applied in batches journaled by a write-ahead journal.
+   */
+  private final class JournaledBatch implements Closeable {
+    private final RenameJournal journal;
+    private final MetadataCache cache;
+    private final List<String> failedPictures;
+    private final List<RenamePlan> plans = new ArrayList<>(RenameJournal.BATCH_SIZE);
+    private long planPosition = -1;
+
+    JournaledBatch(RenameJournal journal, MetadataCache cache, List<String> failedPictures) {
+      this.journal = journal;
+      this.cache = cache;
+      this.failedPictures = failedPictures;
+    }
+
+    /**
+    * @param plan a plan to apply.
+    * @param planPosition a position in the plan file after the plan, -1 if
+    *     the plan does not come from a plan file.
+    */
+    void add(RenamePlan plan, long planPosition) throws IOException {
+      plans.add(plan);
+      this.planPosition = planPosition;
+      if (plans.size() == RenameJournal.BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    private void flush() throws IOException {
+      if (plans.isEmpty()) {
+        return;
+      }
+      for (RenamePlan plan : plans) {
+        journal.intend(plan.getPictureFile(), plan.getNewPictureFile());
+        if (null != plan.getParamFile()) {
+          journal.intend(plan.getParamFile(), plan.getNewParamFile());
+        }
+      }
+      journal.sync();
+      Set<File> dirs = new LinkedHashSet<>();
+      for (RenamePlan plan : plans) {
+        if (apply(plan, false, cache)) {
+          dirs.add(plan.getPictureFile().getParentFile());
+          if (null != plan.getParamFile()) {
+            dirs.add(plan.getParamFile().getParentFile());
+          }
+        } else {
+          Output.error(plan.getPictureFile(), "%s was not renamed.", plan);
+          failedPictures.add(plan.toString());
+        }
+      }
+      journal.commit(dirs, planPosition);
+      plans.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flush();
+      } finally {
+        journal.close();
+      }
+    }
+  }
 }
@@ -0,0 +1,576 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.drew.imaging.ImageProcessingException;
+
+/**
+ * Scans picture directories in three stages: a discovery thread walks the
+ * directories while a fork/join pool lists the next ones, a task per
+ * directory, a pool of workers reads picture metadata and the calling thread
+ * consumes the pictures.
+ * <p>
+ * Stages are connected by a bounded queue of pending results, so discovery
+ * blocks when the consumer falls behind. Memory use does not depend on the
+ * size of the scanned tree, but on the width of its directories: a
+ * directory is listed whole, as its files are sorted by name, and a few
+ * directories are listed ahead of the walk until their entries reach a cap.
+ * Results are consumed in discovery order whatever
+ * the number of workers is. Files of a directory are discovered in the order
+ * of their names and its pictures are consumed in the order they were taken,
+ * the order of names breaking ties, so pictures taken in the same second
+ * get the same suffixes in every run.
+ * <p>
+ * Workers are either a fixed pool of platform threads or a virtual thread per
+ * file. Reads are handed to the workers by an {@link IoScheduler}, which
+ * caps the number of files read at once per storage device. Files which are
+ * not read, cached pictures and files of no picture type, go to the workers
+ * directly.
+ */
+final class PicturePipeline {
+  private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+  // listing waits for the file system rather than the CPU, but a few threads saturate it
+  private static final int MAX_DISCOVERY_THREADS = 16;
+  private static final int PREFETCH_PER_THREAD = 2;
+  // entries of directories listed ahead, some 300 bytes each
+  private static final int MAX_PREFETCHED_ENTRIES = 65536;
+  // pictures of a larger directory are ordered by windows of the size
+  private static final int ORDER_WINDOW = 4096;
+  private static final Comparator<Picture> ORDER_TAKEN = Comparator
+      .comparing(Picture::getDateTaken)
+      .thenComparing(picture -> picture.getPictureFile().getName());
+  private static final Future<ScanResult> END = CompletableFuture.completedFuture(null);
+  private final int threads;
+  private final boolean virtualThreads;
+  private final MetadataCache cache;
+  private final boolean followDirLinks;
+  private final CanonicalNames canonicalNames;
+
+  /**
+  * @param threads a number of workers reading picture metadata or, on
+  *     virtual threads, a number of pictures read at once.
+  * @param virtualThreads true to read every picture on a virtual thread.
+  * @param cache a metadata cache, null to read all the pictures.
+  */
+  PicturePipeline(int threads, boolean virtualThreads, MetadataCache cache) {
+    this(threads, virtualThreads, cache, true, null);
+  }
+
+  /**
+  * @param followDirLinks false to skip links to inner directories, a shard
+  *     does not follow them as they may lead to a directory of another shard.
+  * @param canonicalNames names of pictures which are skipped without reading
+  *     them, null to read all the pictures.
+  */
+  PicturePipeline(int threads,
+      boolean virtualThreads,
+      MetadataCache cache,
+      boolean followDirLinks,
+      CanonicalNames canonicalNames)
+  {
+    this.threads = threads;
+    this.virtualThreads = virtualThreads;
+    this.cache = cache;
+    this.followDirLinks = followDirLinks;
+    this.canonicalNames = canonicalNames;
+  }
+
+  /**
+  * Scans the directories and passes every recognized picture to the consumer.
+  * The consumer is always called on the calling thread.
+  *
+  * @param pictureDirPaths paths of directories to scan.
+  * @param maxDepth maximum depth of inner folders to scan, negative for infinity.
+  * @param consumer a consumer of recognized pictures.
+  * @throws IOException if a directory or a picture can not be read or
+  *     discovery fails.
+  */
+  void run(String[] pictureDirPaths,
+      int maxDepth,
+      Consumer<Picture> consumer)
+      throws IOException
+  {
+    int[] maxDepths = new int[pictureDirPaths.length];
+    Arrays.fill(maxDepths, maxDepth);
+    run(pictureDirPaths, maxDepths, consumer);
+  }
+
+  /**
+  * Scans the directories like {@link #run(String[], int, Consumer)} with a
+  * maximum depth per directory.
+  */
+  void run(String[] pictureDirPaths,
+      int[] maxDepths,
+      Consumer<Picture> consumer)
+      throws IOException
+  {
+    ExecutorService workers = ! virtualThreads
+        ? Executors.newFixedThreadPool(threads, new NamedThreadFactory("picture-worker"))
+        : VirtualThreads.newExecutor("picture-worker");
+    BlockingQueue<Future<ScanResult>> queue =
+        new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD);
+    ForkJoinPool pool = new ForkJoinPool(Math.min(threads, MAX_DISCOVERY_THREADS),
+        new NamedWorkerThreadFactory("picture-discovery"), null, false);
+    IoScheduler scheduler = new IoScheduler(workers, threads);
+    Thread discovery = new NamedThreadFactory("picture-discovery").newThread(() ->
+        discover(pictureDirPaths, maxDepths, pool, workers, scheduler, queue));
+    discovery.start();
+    try {
+      List<Picture> dirPictures = new ArrayList<>();
+      Future<ScanResult> future;
+      while ((future = queue.take()) != END) {
+        ScanResult result = future.get();
+        Metrics.processed();
+        result.report();
+        Picture picture = result.getPicture();
+        if (null == picture) {
+          continue;
+        }
+        // files of a directory are queued one after another
+        if (! dirPictures.isEmpty() && (dirPictures.size() == ORDER_WINDOW
+            || ! picture.getPictureFile().getParentFile().equals(
+                dirPictures.get(0).getPictureFile().getParentFile())))
+        {
+          accept(dirPictures, consumer);
+        }
+        dirPictures.add(picture);
+      }
+      accept(dirPictures, consumer);
+      scheduler.report();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for pictures.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      discovery.interrupt();
+      pool.shutdownNow();
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+  * Passes pictures of a directory to the consumer in the order they were
+  * taken and clears them.
+  */
+  private static void accept(List<Picture> dirPictures, Consumer<Picture> consumer) {
+    dirPictures.sort(ORDER_TAKEN);
+    for (Picture picture : dirPictures) {
+      consumer.accept(picture);
+    }
+    dirPictures.clear();
+  }
+
+  /**
+  * Walks the directories depth first on the calling thread while the pool
+  * lists the next directories on the way ahead. Files are queued in the order
+  * of the walk, so the result does not depend on the number of threads.
+  */
+  private void discover(String[] pictureDirPaths,
+      int[] maxDepths,
+      ForkJoinPool pool,
+      ExecutorService workers,
+      IoScheduler scheduler,
+      BlockingQueue<Future<ScanResult>> queue)
+  {
+    Set<Object> rootDirKeys = new HashSet<>();
+    Set<Object> visitedDirKeys = new HashSet<>();
+    Deque<PendingDir> pendingDirs = new ArrayDeque<>();
+    try {
+      List<PendingDir> roots = new ArrayList<>();
+      for (int i = 0; i < pictureDirPaths.length; i++) {
+        Path dir = Paths.get(pictureDirPaths[i]);
+        Object dirKey = dirKey(dir, null);
+        if (rootDirKeys.add(dirKey)) {
+          visitedDirKeys.add(dirKey);
+          roots.add(new PendingDir(dir, maxDepths[i]));
+        } else {
+          queue.put(CompletableFuture.completedFuture(new ScanResult(null, dir.toFile(), String.format(
+              "Dir %s is given more than once, it is scanned once.",
+              dir.toAbsolutePath()), false)));
+        }
+      }
+      push(pendingDirs, roots);
+      while (! pendingDirs.isEmpty()) {
+        prefetch(pendingDirs, pool);
+        PendingDir pendingDir = pendingDirs.pollFirst();
+        if (pendingDir.maxDepthCounter == 0) {
+          continue;
+        }
+        DirListing listing;
+        try {
+          listing = pendingDir.listing.get();
+        } catch (ExecutionException e) {
+          listing = new DirListing();
+          listing.error = new IOException(e.getCause());
+        }
+        if (null != listing.error) {
+          queue.put(CompletableFuture.completedFuture(new ScanResult(null, pendingDir.dir.toFile(), String.format(
+              "Dir %s could not be listed, %s",
+              pendingDir.dir.toAbsolutePath(),
+              listing.error.getMessage()), true)));
+          continue;
+        }
+        IoScheduler.Directory ioDir = listing.files.isEmpty()
+            ? null
+            : scheduler.directory(pendingDir.dir);
+        for (DirEntry entry : listing.files) {
+          File file = entry.path.toFile();
+          Metrics.discovered();
+          if (null != canonicalNames && canonicalNames.skips(file)) {
+            Metrics.named();
+            queue.put(CompletableFuture.completedFuture(new ScanResult(null, file, String.format(
+                "File [%s] already has properly name.", file.getAbsoluteFile()), false)));
+            continue;
+          }
+          Callable<ScanResult> scan = () -> scan(file, entry.attrs, cache);
+          // a cached picture or a file of no picture type does not load the device
+          queue.put(PictureFactory.reads(file, entry.attrs, cache)
+              ? scheduler.submit(ioDir, entry.attrs, scan)
+              : workers.submit(scan));
+        }
+        List<PendingDir> subdirs = new ArrayList<>();
+        for (DirEntry entry : listing.subdirs) {
+          Object dirKey = dirKey(entry.path, entry.attrs);
+          if (! followDirLinks && Files.isSymbolicLink(entry.path)) {
+            if (! rootDirKeys.contains(dirKey)) {
+              queue.put(CompletableFuture.completedFuture(new ScanResult(null,
+                  entry.path.toFile(), String.format(
+                  "Dir %s is a link which is not followed in a shard, skip it.",
+                  entry.path.toAbsolutePath()), false)));
+            }
+          } else if (visitedDirKeys.add(dirKey)) {
+            subdirs.add(new PendingDir(entry.path, pendingDir.maxDepthCounter - 1));
+          } else if (! rootDirKeys.contains(dirKey)) {
+            // a link loop or a link to a directory met by another path
+            queue.put(CompletableFuture.completedFuture(new ScanResult(null, entry.path.toFile(), String.format(
+                "Dir %s is scanned already by another path, skip it.",
+                entry.path.toAbsolutePath()), false)));
+          }
+        }
+        push(pendingDirs, subdirs);
+      }
+      Metrics.discoveryFinished();
+      queue.put(END);
+    } catch (InterruptedException | CancellationException e) {
+      // the consumer has gone, nobody waits for the rest of the pictures
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      // the consumer would wait for the end forever, it fails on the error instead
+      CompletableFuture<ScanResult> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      try {
+        queue.put(failed);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+  * Pushes the directories so that the first one is walked first.
+  */
+  private static void push(Deque<PendingDir> pendingDirs, List<PendingDir> dirs) {
+    for (int i = dirs.size() - 1; i >= 0; i--) {
+      pendingDirs.addFirst(dirs.get(i));
+    }
+  }
+
+  /**
+  * Forks listing tasks of the next directories of the walk. Only a few
+  * directories are listed ahead, and none more once the listings done ahead
+  * hold {@link #MAX_PREFETCHED_ENTRIES} entries, so wide directories are not
+  * kept in memory many at a time.
+  */
+  private void prefetch(Deque<PendingDir> pendingDirs, ForkJoinPool pool) {
+    int prefetched = 0;
+    long entries = 0;
+    for (PendingDir pendingDir : pendingDirs) {
+      if (prefetched++ == pool.getParallelism() * PREFETCH_PER_THREAD
+          || entries >= MAX_PREFETCHED_ENTRIES)
+      {
+        return;
+      }
+      if (null == pendingDir.listing && pendingDir.maxDepthCounter != 0) {
+        Path dir = pendingDir.dir;
+        boolean listSubdirs = pendingDir.maxDepthCounter != 1;
+        pendingDir.listing = pool.submit(() -> list(dir, listSubdirs));
+      } else if (null != pendingDir.listing && pendingDir.listing.isDone()) {
+        entries += size(pendingDir.listing);
+      }
+    }
+  }
+
+  /**
+  * @return a number of entries of the listing done.
+  */
+  private static int size(Future<DirListing> listing) {
+    try {
+      DirListing done = listing.get();
+      return done.files.size() + done.subdirs.size();
+    } catch (InterruptedException e) {
+      // the consumer has gone, the walk stops at the next put
+      Thread.currentThread().interrupt();
+      return 0;
+    } catch (ExecutionException e) {
+      // walking the directory reports the problem
+      return 0;
+    }
+  }
+
+  /**
+  * Lists the directory reading attributes of every entry once, like
+  * {@link Files#walkFileTree} does. Links are followed.
+  *
+  * @param listSubdirs false to skip subdirectories.
+  */
+  private static DirListing list(Path dir, boolean listSubdirs) {
+    long start = Metrics.start();
+    DirListing listing = new DirListing();
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+      for (Path path : dirStream) {
+        BasicFileAttributes attrs;
+        try {
+          attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+          // a broken link, let reading it as a file report the problem
+          attrs = null;
+        }
+        if (null == attrs || ! attrs.isDirectory()) {
+          listing.files.add(new DirEntry(path, attrs));
+        } else if (listSubdirs) {
+          listing.subdirs.add(new DirEntry(path, attrs));
+        }
+      }
+    } catch (IOException | DirectoryIteratorException e) {
+      listing.error = e instanceof DirectoryIteratorException
+          ? ((DirectoryIteratorException) e).getCause()
+          : (IOException) e;
+    }
+    // the order of a listing depends on the file system, names do not
+    listing.files.sort(DirEntry.ORDER_NAME);
+    listing.subdirs.sort(DirEntry.ORDER_NAME);
+    Metrics.stop(Metrics.Stage.LIST_DIR, start);
+    return listing;
+  }
+
+  /**
+  * @param attrs attributes of the directory, null to read them.
+  * @return a key identifying the directory whatever path leads to it.
+  */
+  private static Object dirKey(Path dir, BasicFileAttributes attrs) {
+    try {
+      Object fileKey = (null == attrs
+          ? Files.readAttributes(dir, BasicFileAttributes.class)
+          : attrs).fileKey();
+      return null == fileKey ? dir.toRealPath() : fileKey;
+    } catch (IOException e) {
+      return dir.toAbsolutePath().normalize();
+    }
+  }
+
+  /**
+  * Reads a picture from the file. Problems of the file are reported by the
+  * result rather than thrown, but for those of I/O.
+  */
+  static ScanResult scan(File file, MetadataCache cache) throws IOException {
+    return scan(file, null, cache);
+  }
+
+  /**
+  * @param attrs attributes of the file read already, null to read them if needed.
+  */
+  static ScanResult scan(File file, BasicFileAttributes attrs, MetadataCache cache)
+      throws IOException
+  {
+    long start = Metrics.start();
+    Object event = StageEvents.begin(Metrics.Stage.GET_PICTURE);
+    Picture picture = null;
+    try {
+      picture = PictureFactory.getPicture(file, attrs, cache);
+      if (picture == null) {
+        return new ScanResult(null, file, String.format("File [%s] unrecognized.", file),
+            false);
+      }
+      return new ScanResult(picture, file, null, false);
+    } catch (ImageProcessingException e) {
+      return new ScanResult(null, file, String.format(
+          "File %s, %s",
+          file.getAbsolutePath(),
+          e.getMessage()), true);
+    } catch (NotImageFileException e) {
+      return new ScanResult(null, file, String.format(
+          "Skip processing file %s as an image, %s",
+          file.getAbsolutePath(),
+          e.getMessage()), false);
+    } finally {
+      Metrics.stop(Metrics.Stage.GET_PICTURE, start);
+      StageEvents.end(event, file,
+          null == picture ? null : picture.getClass().getSimpleName(), null != picture);
+    }
+  }
+
+  /**
+   * A directory to be walked with its listing, forked once the directory is
+   * close to be walked.
+   */
+  private static final class PendingDir {
+    private final Path dir;
+    private final int maxDepthCounter;
+    private Future<DirListing> listing;
+
+    PendingDir(Path dir, int maxDepthCounter) {
+      this.dir = dir;
+      this.maxDepthCounter = maxDepthCounter;
+    }
+  }
+
+  private static final class DirListing {
+    private final List<DirEntry> files = new ArrayList<>();
+    private final List<DirEntry> subdirs = new ArrayList<>();
+    private IOException error;
+  }
+
+  private static final class DirEntry {
+    private static final Comparator<DirEntry> ORDER_NAME = Comparator.comparing(entry ->
+        entry.path.getFileName().toString());
+    private final Path path;
+    private final BasicFileAttributes attrs;
+
+    /**
+    * @param attrs attributes of the entry, null if they can not be read.
+    */
+    DirEntry(Path path, BasicFileAttributes attrs) {
+      this.path = path;
+      this.attrs = attrs;
+    }
+  }
+
+  /**
+   * An outcome of scanning a single file. The message is printed when the
+   * result is consumed to keep the output in discovery order.
+   */
+  static final class ScanResult {
+    private final Picture picture;
+    private final File file;
+    private final String message;
+    private final boolean error;
+
+    ScanResult(Picture picture, File file, String message, boolean error) {
+      this.picture = picture;
+      this.file = file;
+      this.message = message;
+      this.error = error;
+    }
+
+    /**
+    * @return a picture or null if the file is not a recognized picture.
+    */
+    Picture getPicture() {
+      return picture;
+    }
+
+    void report() {
+      if (null != picture) {
+        Output.read(picture);
+      } else if (error) {
+        Output.error(file, message);
+      } else {
+        Output.skipped(file, message);
+      }
+    }
+  }
+
+  private static final class NamedWorkerThreadFactory
+      implements ForkJoinPool.ForkJoinWorkerThreadFactory
+  {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedWorkerThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+      ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName(prefix + "-" + counter.incrementAndGet());
+      return thread;
+    }
+  }
+
+  private static final class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    NamedThreadFactory(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
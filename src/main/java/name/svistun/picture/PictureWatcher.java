@@ -0,0 +1,251 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.type.SidecarIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renames pictures as they appear in the watched directories.
+ * <p>
+ * Directories are registered before they are scanned for the first time,
+ * so files appearing during the scan are renamed once watching starts.
+ * Files of names the date format gives are left, they are most likely
+ * renamed by the scan. A file is renamed once it has not been changed for a
+ * quiet period, so files being copied are not read half written. The
+ * watcher blocks while there are no pending files.
+ */
+final class PictureWatcher {
+  private static final long QUIET_PERIOD_MILLIS = 500;
+  private final PictureManager pictureManager;
+  private final int maxDepth;
+  private final boolean dryRun;
+  private final Map<WatchKey, Path> keyToDirMap = new HashMap<>();
+  private final Map<Path, Integer> dirToDepthMap = new HashMap<>();
+  private final Map<Path, Long> pendingFiles = new LinkedHashMap<>();
+  private final Set<Path> renamedFiles = new HashSet<>();
+  private WatchService watchService;
+
+  /**
+  * @param pictureManager a manager renaming the pictures.
+  * @param maxDepth maximum depth of inner folders to watch, negative for infinity.
+  * @param dryRun true to just output how rename will occur.
+  */
+  PictureWatcher(PictureManager pictureManager, int maxDepth, boolean dryRun) {
+    this.pictureManager = pictureManager;
+    this.maxDepth = maxDepth;
+    this.dryRun = dryRun;
+  }
+
+  /**
+  * Registers the directories, changes of their files are collected from now
+  * on and handled once {@link #watch()} is called.
+  *
+  * @param pictureDirPaths paths of directories to watch.
+  * @throws IOException if no watch service is available.
+  */
+  void register(String[] pictureDirPaths) throws IOException {
+    watchService = FileSystems.getDefault().newWatchService();
+    for (String pictureDirPath : pictureDirPaths) {
+      register(Paths.get(pictureDirPath), 1, false);
+    }
+  }
+
+  /**
+  * Watches the registered directories until the thread is interrupted.
+  *
+  * @throws IOException if a picture can not be renamed.
+  */
+  void watch() throws IOException {
+    try {
+      Output.info("Watching for new pictures.");
+      while (true) {
+        WatchKey key = pendingFiles.isEmpty()
+            ? watchService.take()
+            : watchService.poll(nextDeadline() - System.currentTimeMillis(),
+                TimeUnit.MILLISECONDS);
+        if (null != key) {
+          handle(key);
+        }
+        renamePendingFiles();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      watchService.close();
+    }
+  }
+
+  private void handle(WatchKey key) throws IOException {
+    Path dir = keyToDirMap.get(key);
+    if (null == dir) {
+      key.cancel();
+      return;
+    }
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        Output.error(dir.toFile(),
+            "Events of %s are lost, files appeared there are not renamed until the next run.",
+            dir);
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      SidecarIndex.invalidate(dir.toFile());
+      if (null != dir.getParent()) {
+        SidecarIndex.invalidate(dir.getParent().toFile());
+      }
+      if (renamedFiles.remove(path)) {
+        continue;
+      }
+      if (Files.isDirectory(path)) {
+        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+          // files may have been moved in along with the directory
+          register(path, dirToDepthMap.get(dir) + 1, true);
+        }
+      } else if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE) {
+        pendingFiles.remove(path);
+        pendingFiles.put(path, System.currentTimeMillis() + QUIET_PERIOD_MILLIS);
+      }
+    }
+    if (! key.reset()) {
+      keyToDirMap.remove(key);
+      dirToDepthMap.remove(dir);
+    }
+  }
+
+  private void renamePendingFiles() {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<Path, Long>> iterator = pendingFiles.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Path, Long> entry = iterator.next();
+      if (entry.getValue() > now) {
+        // files are kept in the order of their last change
+        break;
+      }
+      iterator.remove();
+      if (! Files.isRegularFile(entry.getKey())
+          || pictureManager.skipsByName(entry.getKey().toFile()))
+      {
+        continue;
+      }
+      try {
+        RenamePlan plan = pictureManager.rename(entry.getKey().toFile(), dryRun);
+        if (null != plan && ! dryRun) {
+          renamedFiles.add(plan.getNewPictureFile().toPath());
+          renamedFiles.add(plan.getPictureFile().toPath());
+          if (null != plan.getParamFile()) {
+            renamedFiles.add(plan.getNewParamFile().toPath());
+            renamedFiles.add(plan.getParamFile().toPath());
+          }
+        }
+      } catch (IOException e) {
+        Output.error(entry.getKey().toFile(),
+            "File %s, %s",
+            entry.getKey().toAbsolutePath(),
+            e.getMessage());
+      }
+    }
+  }
+
+  private long nextDeadline() {
+    return pendingFiles.values().iterator().next();
+  }
+
+  /**
+  * Registers the directory and its inner directories within the maximum depth.
+  * A directory which can not be registered is reported and left unwatched.
+  *
+  * @param pending true to rename files which are in the directories already.
+  */
+  private void register(Path dir, int depth, boolean pending) throws IOException {
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path innerDir, BasicFileAttributes attrs)
+          throws IOException
+      {
+        int innerDepth = depth + dir.relativize(innerDir).getNameCount()
+            - (dir.equals(innerDir) ? 1 : 0);
+        if (maxDepth >= 0 && innerDepth > maxDepth) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        WatchKey key;
+        try {
+          key = innerDir.register(watchService,
+              StandardWatchEventKinds.ENTRY_CREATE,
+              StandardWatchEventKinds.ENTRY_MODIFY,
+              StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+          report(innerDir, e);
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        keyToDirMap.put(key, innerDir);
+        dirToDepthMap.put(innerDir, innerDepth);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (pending && attrs.isRegularFile()) {
+          pendingFiles.put(file, System.currentTimeMillis() + QUIET_PERIOD_MILLIS);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) {
+        // a directory which has gone or can not be read, the others are watched still
+        report(file, e);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static void report(Path dir, IOException e) {
+    Output.error(dir.toFile(),
+        "Dir %s can not be watched, %s",
+        dir.toAbsolutePath(),
+        e.toString());
+  }
+}
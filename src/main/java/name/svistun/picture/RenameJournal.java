@@ -0,0 +1,204 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A write-ahead journal of renames.
+ * <p>
+ * Renames are journaled in batches: the intended renames of a batch are made
+ * durable before any of them is done, then the directories of the batch are
+ * synced once and the batch is committed. So a crash leaves at most the last
+ * batch uncommitted, and whether its renames took effect is told by the
+ * presence of their files. A committed batch stores a position in the plan
+ * file it came from, if any, to let a resumed run skip the applied plans.
+ */
+public final class RenameJournal implements Closeable {
+  /** A number of pictures renamed per batch. */
+  public static final int BATCH_SIZE = 256;
+  private static final int MAGIC = 0x50524A31;
+  private static final byte INTENT = 1;
+  private static final byte COMMIT = 2;
+  private final FileOutputStream fileOut;
+  private final DataOutputStream out;
+
+  /**
+  * @param journalFile a journal file.
+  * @param length a length of the journal to continue as read by
+  *     {@link #read(File)}, 0 to start a new journal.
+  */
+  public RenameJournal(File journalFile, long length) throws IOException {
+    fileOut = new FileOutputStream(journalFile, length > 0);
+    // drop a record which was being written when the journal was interrupted
+    fileOut.getChannel().truncate(length);
+    out = new DataOutputStream(new BufferedOutputStream(fileOut));
+    if (length == 0) {
+      out.writeInt(MAGIC);
+    }
+  }
+
+  /**
+  * Journals a rename of the current batch.
+  */
+  public void intend(File file, File newFile) throws IOException {
+    out.writeByte(INTENT);
+    out.writeUTF(file.getAbsolutePath());
+    out.writeUTF(newFile.getAbsolutePath());
+  }
+
+  /**
+  * Makes the intended renames durable, to be called before they are done.
+  */
+  public void sync() throws IOException {
+    out.flush();
+    fileOut.getFD().sync();
+  }
+
+  /**
+  * Syncs the directories the renames of the batch are done in and commits
+  * the batch.
+  *
+  * @param dirs directories of the renamed files.
+  * @param planPosition a position in the plan file after the batch, -1 if
+  *     the batch does not come from a plan file.
+  */
+  public void commit(Collection<File> dirs, long planPosition) throws IOException {
+    for (File dir : dirs) {
+      syncDir(dir);
+    }
+    out.writeByte(COMMIT);
+    out.writeLong(planPosition);
+  }
+
+  @Override
+  public void close() throws IOException {
+    sync();
+    out.close();
+  }
+
+  /**
+  * @param journalFile a journal file.
+  * @return renames of the journal.
+  * @throws IOException if the journal can not be read.
+  */
+  public static State read(File journalFile) throws IOException {
+    State state = new State();
+    CountingInputStream counter = new CountingInputStream(new BufferedInputStream(
+        new FileInputStream(journalFile)));
+    try (DataInputStream in = new DataInputStream(counter)) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(String.format("%s is not a journal file.", journalFile));
+      }
+      state.length = counter.getCount();
+      while (true) {
+        byte type;
+        try {
+          type = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+        if (type == INTENT) {
+          state.renames.add(in.readUTF(), in.readUTF());
+        } else if (type == COMMIT) {
+          state.planPosition = in.readLong();
+          state.committed = state.renames.size();
+        } else {
+          throw new IOException(String.format("Journal %s is corrupted.", journalFile));
+        }
+        state.length = counter.getCount();
+      }
+    } catch (EOFException e) {
+      // the last record was being written, the batch is not committed anyway
+    }
+    return state;
+  }
+
+  private static void syncDir(File dir) {
+    try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // not every platform can sync a directory, the rename is durable there anyway
+    }
+  }
+
+  /**
+   * Renames read from a journal.
+   */
+  public static final class State {
+    private final RenameStore renames = new RenameStore();
+    private int committed;
+    private long planPosition = -1;
+    private long length;
+
+    /**
+    * @return all the journaled renames.
+    */
+    public RenameStore getRenames() {
+      return renames;
+    }
+
+    /**
+    * @return renames of the last batch which has not been committed as pairs
+    *     of the file and the new file.
+    */
+    public List<File[]> getUncommittedRenames() {
+      List<File[]> uncommittedRenames = new ArrayList<>(renames.size() - committed);
+      for (int i = committed; i < renames.size(); i++) {
+        uncommittedRenames.add(new File[] {renames.getFile(i), renames.getNewFile(i)});
+      }
+      return uncommittedRenames;
+    }
+
+    /**
+    * @return a length of the journal up to the last complete record.
+    */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+    * @return a position in the plan file after the last committed batch or
+    *     -1 if the journal does not come from a plan file.
+    */
+    public long getPlanPosition() {
+      return planPosition;
+    }
+  }
+}
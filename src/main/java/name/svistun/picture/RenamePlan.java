@@ -0,0 +1,155 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * A planned rename of a picture and its parameter file.
+ */
+public final class RenamePlan {
+  private final File pictureFile;
+  private final String newPictureName;
+  private final File paramFile;
+  private final String newParamName;
+  private final Date dateTaken;
+  private final TimeZone timeZone;
+  private final File original;
+
+  /**
+  * @param pictureFile a picture file.
+  * @param newPictureName a name the picture file to be renamed to.
+  * @param paramFile a parameter file of the picture, null if there is no one.
+  * @param newParamName a name the parameter file to be renamed to, null if
+  *     there is no parameter file.
+  * @param dateTaken a date when the picture was taken.
+  */
+  public RenamePlan(File pictureFile,
+      String newPictureName,
+      File paramFile,
+      String newParamName,
+      Date dateTaken)
+  {
+    this(pictureFile, newPictureName, paramFile, newParamName, dateTaken, null);
+  }
+
+  /**
+  * @param timeZone a time zone the date taken is local to, null if it is
+  *     unknown.
+  */
+  public RenamePlan(File pictureFile,
+      String newPictureName,
+      File paramFile,
+      String newParamName,
+      Date dateTaken,
+      TimeZone timeZone)
+  {
+    this(pictureFile, newPictureName, paramFile, newParamName, dateTaken, timeZone, null);
+  }
+
+  /**
+  * @param original a file of the same content the picture file is replaced
+  *     with a hard link to before it is renamed, null to keep the picture file.
+  */
+  public RenamePlan(File pictureFile,
+      String newPictureName,
+      File paramFile,
+      String newParamName,
+      Date dateTaken,
+      TimeZone timeZone,
+      File original)
+  {
+    this.pictureFile = pictureFile;
+    this.newPictureName = newPictureName;
+    this.paramFile = paramFile;
+    this.newParamName = newParamName;
+    this.dateTaken = dateTaken;
+    this.timeZone = timeZone;
+    this.original = original;
+  }
+
+  /**
+  * @return a picture file.
+  */
+  public File getPictureFile() {
+    return pictureFile;
+  }
+
+  /**
+  * @return a file the picture file to be renamed to.
+  */
+  public File getNewPictureFile() {
+    return new File(pictureFile.getParentFile(), newPictureName);
+  }
+
+  /**
+  * @return a parameter file of the picture or null if there is no one.
+  */
+  public File getParamFile() {
+    return paramFile;
+  }
+
+  /**
+  * @return a file the parameter file to be renamed to or null if there is
+  *     no parameter file.
+  */
+  public File getNewParamFile() {
+    return null == paramFile ? null : new File(paramFile.getParentFile(), newParamName);
+  }
+
+  /**
+  * @return a date when the picture was taken.
+  */
+  public Date getDateTaken() {
+    return dateTaken;
+  }
+
+  /**
+  * @return a time zone the date taken is local to or null if it is unknown.
+  */
+  public TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  /**
+  * @return a file the picture file is replaced with a hard link to or null
+  *     if the picture file is kept.
+  */
+  public File getOriginal() {
+    return original;
+  }
+
+  /**
+  * @return a string that represents the planned picture.
+  */
+  @Override
+  public String toString() {
+    return "Picture " + pictureFile.getAbsolutePath()
+        + (null == paramFile ? "" : String.format(" (%s)",
+        paramFile.getAbsolutePath()));
+  }
+}
@@ -0,0 +1,175 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * A binary file of rename plans, so that renames planned by a dry run can be
+ * applied later without reading the pictures again.
+ * <p>
+ * Every plan is stored as the absolute path of the picture file, the new
+ * name of the picture file, the absolute path and the new name of the
+ * parameter file (empty strings if there is no one), the date taken and the
+ * id of its time zone (an empty string if it is unknown) and the absolute
+ * path of the file the picture is replaced with a hard link to (an empty
+ * string if the picture is kept). Plan files of the earlier versions,
+ * without time zones or links, are read still.
+ */
+public final class RenamePlanFile {
+  private static final int MAGIC_V1 = 0x50525031;
+  private static final int MAGIC_V2 = 0x50525032;
+  private static final int MAGIC = 0x50525033;
+  private static final String NO_PARAM_FILE = "";
+  private static final String NO_TIME_ZONE = "";
+  private static final String NO_ORIGINAL = "";
+
+  private RenamePlanFile() {}
+
+  /**
+   * Appends plans to a new plan file.
+   */
+  public static final class Writer implements Closeable {
+    private final DataOutputStream out;
+
+    public Writer(File planFile) throws IOException {
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(planFile)));
+      out.writeInt(MAGIC);
+    }
+
+    public synchronized void write(RenamePlan plan) throws IOException {
+      out.writeUTF(plan.getPictureFile().getAbsolutePath());
+      out.writeUTF(plan.getNewPictureFile().getName());
+      if (null == plan.getParamFile()) {
+        out.writeUTF(NO_PARAM_FILE);
+        out.writeUTF(NO_PARAM_FILE);
+      } else {
+        out.writeUTF(plan.getParamFile().getAbsolutePath());
+        out.writeUTF(plan.getNewParamFile().getName());
+      }
+      out.writeLong(plan.getDateTaken().getTime());
+      out.writeUTF(null == plan.getTimeZone() ? NO_TIME_ZONE : plan.getTimeZone().getID());
+      out.writeUTF(null == plan.getOriginal()
+          ? NO_ORIGINAL
+          : plan.getOriginal().getAbsolutePath());
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * Reads plans of a plan file one by one.
+   */
+  public static final class Reader implements Closeable {
+    private final File planFile;
+    private final CountingInputStream counter;
+    private final DataInputStream in;
+    private final int magic;
+
+    public Reader(File planFile) throws IOException {
+      this(planFile, 0);
+    }
+
+    /**
+    * @param planFile a plan file.
+    * @param position a position of the first plan to read as returned by
+    *     {@link #getPosition()}, 0 to read from the beginning.
+    */
+    public Reader(File planFile, long position) throws IOException {
+      this.planFile = planFile;
+      counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(planFile)));
+      in = new DataInputStream(counter);
+      magic = in.readInt();
+      if (magic != MAGIC && magic != MAGIC_V2 && magic != MAGIC_V1) {
+        in.close();
+        throw new IOException(String.format("%s is not a plan file.", planFile));
+      }
+      while (counter.getCount() < position) {
+        if (in.skip(position - counter.getCount()) <= 0) {
+          in.close();
+          throw new IOException(String.format("Plan file %s is truncated.", planFile));
+        }
+      }
+    }
+
+    /**
+    * @return a position after the last read plan.
+    */
+    public long getPosition() {
+      return counter.getCount();
+    }
+
+    /**
+    * @return the next plan or null if there are no more plans.
+    * @throws IOException if the plan file can not be read or is truncated.
+    */
+    public RenamePlan read() throws IOException {
+      String pictureFilePath;
+      try {
+        pictureFilePath = in.readUTF();
+      } catch (EOFException e) {
+        return null;
+      }
+      try {
+        String newPictureName = in.readUTF();
+        String paramFilePath = in.readUTF();
+        String newParamName = in.readUTF();
+        Date dateTaken = new Date(in.readLong());
+        String timeZoneId = magic == MAGIC_V1 ? NO_TIME_ZONE : in.readUTF();
+        TimeZone timeZone = NO_TIME_ZONE.equals(timeZoneId)
+            ? null
+            : TimeZone.getTimeZone(timeZoneId);
+        String originalPath = magic == MAGIC ? in.readUTF() : NO_ORIGINAL;
+        File original = NO_ORIGINAL.equals(originalPath) ? null : new File(originalPath);
+        return NO_PARAM_FILE.equals(paramFilePath)
+            ? new RenamePlan(new File(pictureFilePath), newPictureName, null, null, dateTaken,
+                timeZone, original)
+            : new RenamePlan(new File(pictureFilePath), newPictureName,
+                new File(paramFilePath), newParamName, dateTaken, timeZone, original);
+      } catch (EOFException e) {
+        throw new IOException(String.format("Plan file %s is truncated.", planFile), e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
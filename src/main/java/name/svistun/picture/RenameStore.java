@@ -0,0 +1,157 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renames kept in a few primitive arrays rather than as objects.
+ * <p>
+ * A rename takes an id of its directory, an offset and the UTF-8 bytes of
+ * both names in a shared arena, 56 bytes a rename of a journal of a million
+ * renames instead of 267 bytes of two files and an array, so a journal of
+ * millions of renames fits in memory.
+ * Directories are interned, a rename to another directory keeps the id of
+ * the new directory aside as it is rare. Files are created on access.
+ */
+public final class RenameStore {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int INITIAL_NAME_BYTES = 32;
+  private static final byte NAME_END = 0;
+  private final Map<String, Integer> dirToIdMap = new HashMap<>();
+  private final List<File> dirs = new ArrayList<>();
+  private final Map<Integer, Integer> indexToNewDirIdMap = new HashMap<>();
+  private int[] dirIds = new int[INITIAL_CAPACITY];
+  private int[] nameOffsets = new int[INITIAL_CAPACITY];
+  private byte[] names = new byte[INITIAL_CAPACITY * INITIAL_NAME_BYTES];
+  private int namesLength;
+  private int size;
+
+  /**
+  * Adds a rename of absolute paths.
+  */
+  public void add(String path, String newPath) {
+    if (size == dirIds.length) {
+      int capacity = grow(size, size + 1);
+      dirIds = Arrays.copyOf(dirIds, capacity);
+      nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+    }
+    int nameStart = path.lastIndexOf(File.separatorChar) + 1;
+    int newNameStart = newPath.lastIndexOf(File.separatorChar) + 1;
+    int dirId = getDirId(path.substring(0, nameStart));
+    if (nameStart != newNameStart || ! path.regionMatches(0, newPath, 0, nameStart)) {
+      indexToNewDirIdMap.put(size, getDirId(newPath.substring(0, newNameStart)));
+    }
+    dirIds[size] = dirId;
+    nameOffsets[size] = namesLength;
+    appendName(path.substring(nameStart));
+    appendName(newPath.substring(newNameStart));
+    size++;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+  * @return a file renamed by the rename of the index.
+  */
+  public File getFile(int index) {
+    checkIndex(index);
+    return new File(dirs.get(dirIds[index]), readName(nameOffsets[index]));
+  }
+
+  /**
+  * @return a file the file is renamed to by the rename of the index.
+  */
+  public File getNewFile(int index) {
+    checkIndex(index);
+    Integer newDirId = indexToNewDirIdMap.get(index);
+    return new File(dirs.get(null == newDirId ? dirIds[index] : newDirId),
+        readName(nameEnd(nameOffsets[index]) + 1));
+  }
+
+  private int getDirId(String dir) {
+    Integer dirId = dirToIdMap.get(dir);
+    if (null == dirId) {
+      dirId = dirs.size();
+      dirToIdMap.put(dir, dirId);
+      dirs.add(dir.isEmpty() ? null : new File(dir));
+    }
+    return dirId;
+  }
+
+  private void appendName(String name) {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (namesLength + bytes.length + 1 > names.length) {
+      names = Arrays.copyOf(names, grow(names.length, namesLength + bytes.length + 1));
+    }
+    System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+    namesLength += bytes.length;
+    names[namesLength++] = NAME_END;
+  }
+
+  private String readName(int offset) {
+    return new String(names, offset, nameEnd(offset) - offset, StandardCharsets.UTF_8);
+  }
+
+  private int nameEnd(int offset) {
+    int end = offset;
+    while (names[end] != NAME_END) {
+      end++;
+    }
+    return end;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(String.format(
+          "Index %s is out of %s renames.",
+          index,
+          size));
+    }
+  }
+
+  /**
+  * @return a capacity at least the minimum one, half as large again as the
+  *     current one if possible.
+  */
+  private static int grow(int capacity, int minCapacity) {
+    if (minCapacity < 0) {
+      throw new OutOfMemoryError("Renames do not fit in an array.");
+    }
+    int newCapacity = capacity + (capacity >> 1);
+    if (newCapacity - minCapacity < 0) {
+      newCapacity = minCapacity;
+    }
+    return newCapacity < 0 ? Integer.MAX_VALUE - 8 : newCapacity;
+  }
+}
@@ -0,0 +1,353 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.type.SidecarIndex;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Renames the paths by worker processes, each of them renames a shard of
+ * the directories.
+ * <p>
+ * The top of the tree is walked until there are a few groups of directories
+ * per worker. A group is a directory with a maximum depth to scan it to,
+ * along with its sidecar folders, so every directory a picture or its
+ * sidecar is renamed in belongs to a single group and its names are
+ * reserved by a single process. Groups are dealt to shard files and a
+ * worker JVM is launched per shard with the same options. The output of the
+ * workers is forwarded line by line and their failures are collected from
+ * files they write when they are done. Workers do not follow links to inner
+ * directories as a link may lead into another shard.
+ * <p>
+ * Workers read the metadata cache and write their entries to delta files,
+ * which are merged into the cache once the workers are done. Entries are
+ * keyed by files rather than paths, so every worker loads the whole cache.
+ */
+final class ShardCoordinator {
+  private static final int GROUPS_PER_SHARD = 4;
+  private static final String FAILED_SUFFIX = ".failed";
+  private static final String CACHE_SUFFIX = ".cache";
+  private static final String[] SKIPPED_JVM_ARGS = {"-XX:StartFlightRecording", "-agentlib:jdwp"};
+  private final CliOptions cliOptions;
+
+  ShardCoordinator(CliOptions cliOptions) {
+    this.cliOptions = cliOptions;
+  }
+
+  /**
+  * Splits the paths into shards and waits for the workers to rename them.
+  *
+  * @param failedPictures a list to add the pictures the workers failed to
+  *     rename to.
+  */
+  void run(List<String> failedPictures) throws IOException {
+    List<Shard> shards = split(cliOptions.getPictureDirPaths(), cliOptions.getMaxDepth(),
+        cliOptions.getShards());
+    File shardDir = Files.createTempDirectory("picture-shards").toFile();
+    List<Process> workers = new ArrayList<>();
+    List<Thread> forwarders = new ArrayList<>();
+    for (int i = 0; i < shards.size(); i++) {
+      File shardFile = new File(shardDir, "shard-" + i);
+      shards.get(i).write(shardFile);
+      Process worker = new ProcessBuilder(command(i, shardFile)).start();
+      worker.getOutputStream().close();
+      workers.add(worker);
+      forwarders.add(forward(worker.getInputStream(), false));
+      forwarders.add(forward(worker.getErrorStream(), true));
+    }
+    boolean failed = false;
+    try {
+      for (int i = 0; i < workers.size(); i++) {
+        int exitValue = workers.get(i).waitFor();
+        File failedFile = new File(shardDir, "shard-" + i + FAILED_SUFFIX);
+        if (exitValue != 0 || ! failedFile.isFile()) {
+          Output.error(failedFile.getParentFile(),
+              "Worker of shard %s exited with %s.",
+              i,
+              exitValue);
+          failedPictures.add(String.format("Directories of shard %s: %s",
+              i,
+              StringUtils.join(shards.get(i).paths, ", ")));
+          failed = true;
+        } else {
+          failedPictures.addAll(Files.readAllLines(failedFile.toPath(), StandardCharsets.UTF_8));
+        }
+      }
+      for (Thread forwarder : forwarders) {
+        forwarder.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      for (Process worker : workers) {
+        worker.destroy();
+      }
+      throw new IOException("Interrupted while waiting for workers.", e);
+    }
+    if (! cliOptions.isNoCache()) {
+      mergeCaches(shardDir, shards.size());
+    }
+    if (! failed) {
+      for (File file : shardDir.listFiles()) {
+        Files.delete(file.toPath());
+      }
+      Files.delete(shardDir.toPath());
+    }
+  }
+
+  /**
+  * @return a file a worker of the shard writes its metadata cache entries to.
+  */
+  static File getCacheDeltaFile(File shardFile) {
+    return new File(shardFile.getPath() + CACHE_SUFFIX);
+  }
+
+  /**
+  * Writes pictures a worker of the shard failed to rename, the file tells
+  * the shard is done.
+  */
+  static void writeFailed(File shardFile, List<String> failedPictures) throws IOException {
+    Files.write(new File(shardFile.getPath() + FAILED_SUFFIX).toPath(), failedPictures,
+        StandardCharsets.UTF_8);
+  }
+
+  /**
+  * Walks the top of the tree until there are a few groups per shard and
+  * deals the groups to the shards.
+  */
+  private static List<Shard> split(String[] pictureDirPaths, int maxDepth, int shardCount)
+      throws IOException
+  {
+    List<Path> roots = new ArrayList<>();
+    List<Path> realRoots = new ArrayList<>();
+    for (String pictureDirPath : pictureDirPaths) {
+      Path dir = Paths.get(pictureDirPath);
+      Path realDir = dir.toRealPath();
+      if (realRoots.contains(realDir)) {
+        Output.skipped(dir.toFile(),
+            "Dir %s is given more than once, it is scanned once.",
+            dir.toAbsolutePath());
+        continue;
+      }
+      roots.add(dir);
+      realRoots.add(realDir);
+    }
+    Deque<Shard> groups = new ArrayDeque<>();
+    for (int i = 0; i < roots.size(); i++) {
+      Path outerRoot = null;
+      for (int j = 0; j < roots.size(); j++) {
+        if (j != i && realRoots.get(i).startsWith(realRoots.get(j))) {
+          outerRoot = roots.get(j);
+        }
+      }
+      if (null == outerRoot) {
+        groups.add(new Shard(roots.get(i), maxDepth));
+      } else {
+        // a shard of the outer root would rename the directory as well
+        Output.skipped(roots.get(i).toFile(),
+            "Dir %s is within %s, it is scanned along with it.",
+            roots.get(i).toAbsolutePath(),
+            outerRoot.toAbsolutePath());
+      }
+    }
+    List<Shard> done = new ArrayList<>();
+    while (! groups.isEmpty() && groups.size() + done.size() < shardCount * GROUPS_PER_SHARD) {
+      Shard group = groups.poll();
+      int depth = group.maxDepths.get(0);
+      if (depth >= 0 && depth <= 1) {
+        done.add(group);
+        continue;
+      }
+      Path dir = Paths.get(group.paths.get(0));
+      int subdirDepth = depth < 0 ? depth : depth - 1;
+      Shard files = new Shard(dir, 1);
+      List<Shard> subdirs = new ArrayList<>();
+      try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir)) {
+        for (Path path : dirStream) {
+          if (! Files.isDirectory(path)) {
+            continue;
+          }
+          if (Files.isSymbolicLink(path)) {
+            Output.skipped(path.toFile(),
+                "Dir %s is a link which is not followed in a shard, skip it.",
+                path.toAbsolutePath());
+            continue;
+          }
+          if (SidecarIndex.isSidecarFolder(path.getFileName().toString())) {
+            files.add(path, subdirDepth);
+          } else {
+            subdirs.add(new Shard(path, subdirDepth));
+          }
+        }
+      } catch (IOException | DirectoryIteratorException e) {
+        // let the worker report the problem
+        done.add(group);
+        continue;
+      }
+      done.add(files);
+      groups.addAll(subdirs);
+    }
+    done.addAll(groups);
+    List<Shard> shards = new ArrayList<>();
+    for (int i = 0; i < done.size(); i++) {
+      if (i < shardCount) {
+        shards.add(new Shard());
+      }
+      shards.get(i % shardCount).addAll(done.get(i));
+    }
+    return shards;
+  }
+
+  private List<String> command(int shard, File shardFile) {
+    List<String> command = new ArrayList<>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (! StringUtils.startsWithAny(jvmArg, SKIPPED_JVM_ARGS)) {
+        command.add(jvmArg);
+      }
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Main.class.getName());
+    command.addAll(cliOptions.getShardWorkerArgs());
+    if (null != cliOptions.getMetricsPath()) {
+      command.add("--metrics");
+      command.add(cliOptions.getMetricsPath() + "." + shard);
+    }
+    command.add("--shard-file");
+    command.add(shardFile.getPath());
+    return command;
+  }
+
+  private static Thread forward(InputStream in, boolean error) {
+    Thread forwarder = new Thread(() -> {
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+        String line;
+        while (null != (line = reader.readLine())) {
+          Output.forward(line, error);
+        }
+      } catch (IOException e) {
+        // the worker has gone, its exit value tells what happened
+      }
+    }, error ? "shard-stderr" : "shard-stdout");
+    forwarder.start();
+    return forwarder;
+  }
+
+  private static void mergeCaches(File shardDir, int shards) {
+    try (MetadataCache cache = new MetadataCache(MetadataCache.DEFAULT_FILE)) {
+      for (int i = 0; i < shards; i++) {
+        File deltaFile = getCacheDeltaFile(new File(shardDir, "shard-" + i));
+        cache.merge(deltaFile);
+        Files.deleteIfExists(deltaFile.toPath());
+      }
+    } catch (IOException e) {
+      Output.error(MetadataCache.DEFAULT_FILE,
+          "Metadata cache %s is not updated by the shards, %s",
+          MetadataCache.DEFAULT_FILE,
+          e.getMessage());
+    }
+  }
+
+  /**
+   * Directories of a shard with the maximum depths to scan them to.
+   */
+  static final class Shard {
+    private final List<String> paths = new ArrayList<>();
+    private final List<Integer> maxDepths = new ArrayList<>();
+
+    Shard() {}
+
+    private Shard(Path dir, int maxDepth) {
+      add(dir, maxDepth);
+    }
+
+    String[] getPaths() {
+      return paths.toArray(new String[paths.size()]);
+    }
+
+    int[] getMaxDepths() {
+      int[] depths = new int[maxDepths.size()];
+      for (int i = 0; i < depths.length; i++) {
+        depths[i] = maxDepths.get(i);
+      }
+      return depths;
+    }
+
+    /**
+    * Reads a shard file of lines of a maximum depth and a path separated
+    * by a tab.
+    */
+    static Shard read(File shardFile) throws IOException {
+      Shard shard = new Shard();
+      for (String line : Files.readAllLines(shardFile.toPath(), StandardCharsets.UTF_8)) {
+        int separator = line.indexOf('\t');
+        try {
+          shard.maxDepths.add(Integer.parseInt(line.substring(0, Math.max(0, separator))));
+        } catch (NumberFormatException e) {
+          throw new IOException(String.format("%s is not a shard file.", shardFile), e);
+        }
+        shard.paths.add(line.substring(separator + 1));
+      }
+      return shard;
+    }
+
+    private void add(Path dir, int maxDepth) {
+      paths.add(dir.toString());
+      maxDepths.add(maxDepth);
+    }
+
+    private void addAll(Shard shard) {
+      paths.addAll(shard.paths);
+      maxDepths.addAll(shard.maxDepths);
+    }
+
+    private void write(File shardFile) throws IOException {
+      try (Writer writer = Files.newBufferedWriter(shardFile.toPath(), StandardCharsets.UTF_8)) {
+        for (int i = 0; i < paths.size(); i++) {
+          writer.write(String.format("%s\t%s%n", maxDepths.get(i), paths.get(i)));
+        }
+      }
+    }
+  }
+}
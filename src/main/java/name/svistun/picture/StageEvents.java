@@ -0,0 +1,87 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+
+/**
+ * Java Flight Recorder events of the stages of processing a file.
+ * <p>
+ * Events are emitted by an implementation compiled on JDK 11 or later in
+ * the {@code jfr} build profile and loaded if the running JVM has JFR. The
+ * events are disabled unless a recording enables them, there is nothing to
+ * emit on JDK 8 or a build without the profile, so the calls are no-ops then.
+ */
+public final class StageEvents {
+  private static final String SINK_CLASS = "name.svistun.picture.JfrStageEvents";
+  private static final Sink SINK = loadSink();
+
+  private StageEvents() {}
+
+  /**
+  * An emitter of stage events.
+  */
+  interface Sink {
+
+    /**
+    * @return an event in progress or null if the stage is not recorded.
+    */
+    Object begin(Metrics.Stage stage);
+
+    void end(Object event, File file, String type, boolean success);
+  }
+
+  /**
+  * Begins an event of the stage.
+  *
+  * @return an event to be passed to {@link #end(Object, File, String, boolean)},
+  *     null if the stage is not recorded.
+  */
+  public static Object begin(Metrics.Stage stage) {
+    return null == SINK ? null : SINK.begin(stage);
+  }
+
+  /**
+  * Ends the event and commits it if the recording wants it.
+  *
+  * @param event an event begun, null is ignored.
+  * @param file a file of the stage, its size is recorded.
+  * @param type a type of the picture or the file.
+  * @param success true if the stage succeeded.
+  */
+  public static void end(Object event, File file, String type, boolean success) {
+    if (null != event) {
+      SINK.end(event, file, type, success);
+    }
+  }
+
+  private static Sink loadSink() {
+    try {
+      return (Sink) Class.forName(SINK_CLASS).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
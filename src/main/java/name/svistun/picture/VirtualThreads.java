@@ -0,0 +1,77 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Executors running every task on a new virtual thread.
+ * <p>
+ * Virtual threads exist since JDK 21, so the executors are made by an
+ * implementation compiled in the {@code loom} build profile and loaded if the
+ * running JVM has them. Built or run on an older JDK, there are no virtual
+ * threads and callers fall back to platform threads.
+ */
+final class VirtualThreads {
+  private static final String FACTORY_CLASS = "name.svistun.picture.VirtualThreadExecutors";
+  private static final ExecutorFactory FACTORY = loadFactory();
+
+  private VirtualThreads() {}
+
+  /**
+  * A maker of thread-per-task executors of virtual threads.
+  */
+  interface ExecutorFactory {
+
+    /**
+    * @param prefix a prefix of names of the threads.
+    */
+    ExecutorService newExecutor(String prefix);
+  }
+
+  static boolean isAvailable() {
+    return null != FACTORY;
+  }
+
+  /**
+  * @param prefix a prefix of names of the threads.
+  * @return an executor starting a virtual thread per task.
+  * @throws UnsupportedOperationException if virtual threads are not available.
+  */
+  static ExecutorService newExecutor(String prefix) {
+    if (null == FACTORY) {
+      throw new UnsupportedOperationException("Virtual threads are not available.");
+    }
+    return FACTORY.newExecutor(prefix);
+  }
+
+  private static ExecutorFactory loadFactory() {
+    try {
+      return (ExecutorFactory) Class.forName(FACTORY_CLASS).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+}
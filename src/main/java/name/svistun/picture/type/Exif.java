@@ -24,16 +24,16 @@ package name.svistun.picture.type;
  * SOFTWARE.
  */
 
+import name.svistun.picture.Metrics;
 import name.svistun.picture.NotImageFileException;
 import name.svistun.picture.Picture;
+import name.svistun.picture.StageEvents;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.TimeZone;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import com.drew.imaging.ImageMetadataReader;
 import com.drew.imaging.ImageProcessingException;
@@ -41,12 +41,6 @@ import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
 
 public final class Exif extends Picture {
-  private static Map<String, String> paramFileExtToFolderNameMap;
-
-  static {
-    paramFileExtToFolderNameMap = new HashMap<>();
-    paramFileExtToFolderNameMap.put("nksc", "NKSC_PARAM");
-  }
 
   public Exif(File photoFile) throws IOException,
       ImageProcessingException,
@@ -55,61 +49,102 @@ public final class Exif extends Picture {
     super(photoFile);
     init();
   }
+
+  /**
+  * Creates a photo with already known metadata, the photo file is not read.
+  */
+  public Exif(File photoFile, Date dateTaken, File paramFile) {
+    super(photoFile);
+    setDateTaken(dateTaken);
+    Matcher matcherPhoto = getPatternPictureFile().matcher(photoFile.getName());
+    if (null != paramFile && matcherPhoto.find()) {
+      Matcher matcherParams = getPatternPictureFile().matcher(paramFile.getName());
+      if (matcherParams.find()) {
+        setParamFile(paramFile);
+        setPatternParamsFile(SidecarIndex.getPattern(matcherPhoto.group(3),
+            matcherParams.group(3)));
+      }
+    }
+  }
   
   @Override
   protected void initDateTaken() throws IOException, ImageProcessingException {
-    Date dateTaken = null;
-    Metadata metadata = ImageMetadataReader.readMetadata(getPictureFile());
-    // obtain the Exif SubIFD directory
-    for (ExifSubIFDDirectory directory : metadata.getDirectoriesOfType(ExifSubIFDDirectory.class)) {
-      dateTaken = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
-      if (dateTaken != null) {
-        break;
+    ExifDateReader.DateTaken read = null;
+    try {
+      read = ExifDateReader.readDateTimeOriginal(getPictureFile());
+    } catch (IOException e) {
+      // the fast path failed, let the full metadata parsing report the problem
+    }
+    Date dateTaken = null == read ? null : read.getDate();
+    TimeZone timeZone = null == read ? null : read.getTimeZone();
+    if (null == dateTaken) {
+      Metadata metadata = ImageMetadataReader.readMetadata(getPictureFile());
+      // obtain the Exif SubIFD directory
+      for (ExifSubIFDDirectory directory : metadata.getDirectoriesOfType(ExifSubIFDDirectory.class)) {
+        dateTaken = directory.getDate(ExifSubIFDDirectory.TAG_DATETIME_ORIGINAL);
+        if (dateTaken != null) {
+          dateTaken = new Date(dateTaken.getTime() + ExifDateReader.parseSubSecond(
+              directory.getString(ExifSubIFDDirectory.TAG_SUBSECOND_TIME_ORIGINAL)));
+          timeZone = ExifDateReader.parseOffset(
+              directory.getString(ExifSubIFDDirectory.TAG_TIME_ZONE_ORIGINAL));
+          break;
+        }
       }
     }
     if (null == dateTaken) {
       throw new ImageProcessingException("could not find date taken in EXIF");
     }
     setDateTaken(dateTaken);
+    setTimeZone(timeZone);
+  }
+
+  /**
+  * Finds a sidecar of the photo in the listing of its directory, which is
+  * shared by the photos of the directory.
+  *
+  * @param photoBaseName the name of the photo file without its extension.
+  * @return a sidecar or null if the photo has no one.
+  * @throws IOException if a sidecar folder can not be listed.
+  */
+  static SidecarIndex.Sidecar findSidecar(File photoFile, String photoBaseName)
+      throws IOException
+  {
+    long start = Metrics.start();
+    Object event = StageEvents.begin(Metrics.Stage.FIND_SIDECAR);
+    SidecarIndex.Sidecar sidecar = null;
+    try {
+      sidecar = SidecarIndex.forDirectory(photoFile.getParentFile())
+          .find(photoFile.getName(), photoBaseName);
+      return sidecar;
+    } finally {
+      Metrics.stop(Metrics.Stage.FIND_SIDECAR, start);
+      StageEvents.end(event, photoFile,
+          null == sidecar ? null : sidecar.getExt(), null != sidecar);
+    }
   }
 
   private void init() throws IOException, ImageProcessingException, NotImageFileException {
     Matcher matcherPhoto = getPatternPictureFile().matcher(getPictureFile().getName());
     if (matcherPhoto.find()) {
       String photoFileExt = matcherPhoto.group(3);
-      if (paramFileExtToFolderNameMap.containsKey(photoFileExt.toLowerCase())) {
+      if (SidecarIndex.isSidecarExt(photoFileExt)) {
         throw new NotImageFileException("recognized as a settings file.");
       }
-      for (String paramFileExt : paramFileExtToFolderNameMap.keySet()) {
-        File paramFileFolder = new File(getPictureFile().getParent()
-            + File.separator + paramFileExtToFolderNameMap.get(paramFileExt));
-        if (paramFileFolder.exists()) {
-          File[] paramFileFolderFiles = paramFileFolder.listFiles();
-          if (null == paramFileFolderFiles) {
-            throw new IOException(String.format("Directory %s returned null at getting list of its files.",
-                    paramFileFolder.getName()));
-          } else {
-            Pattern paramsFilePattern = Pattern.compile(String.format("(.+?)((\\.(%s))?\\.(%s|%s))",
-                photoFileExt,
-                paramFileExt,
-                paramFileExt.toUpperCase()));
-            for (File paramFileFolderFile : paramFileFolderFiles) {
-              Matcher matcherParams = paramsFilePattern.matcher(paramFileFolderFile.getName());
-              if (matcherParams.matches()) {
-                if (matcherParams.group(1).equals(matcherPhoto.group(1))) {
-                  setParamFile(paramFileFolderFile);
-                  setPatternParamsFile(paramsFilePattern);
-                  break;
-                }
-              }
-            }
-            if (getParamFile() != null) {
-              break;
-            }
-          }
-        }
+      SidecarIndex.Sidecar sidecar = findSidecar(getPictureFile(), matcherPhoto.group(1));
+      if (null != sidecar) {
+        setParamFile(sidecar.getFile());
+        setPatternParamsFile(SidecarIndex.getPattern(photoFileExt, sidecar.getExt()));
       }
     }
-    initDateTaken();
+    long start = Metrics.start();
+    Object event = StageEvents.begin(Metrics.Stage.READ_EXIF);
+    boolean read = false;
+    try {
+      initDateTaken();
+      read = true;
+    } finally {
+      Metrics.stop(Metrics.Stage.READ_EXIF, start);
+      StageEvents.end(event, getPictureFile(), getClass().getSimpleName(), read);
+    }
   }
 }
@@ -0,0 +1,312 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the original date of a JPEG or TIFF based (NEF) image by walking only
+ * the JPEG APP1 segment and the IFD0 to Exif SubIFD chain. The fraction of a
+ * second and the time zone offset of the date are read from the same SubIFD.
+ * <p>
+ * The file is read through a small window reused by the thread, so only a few
+ * kilobytes are read whatever the size of the image is. The reader gives up
+ * by returning null on anything it does not expect, the caller is supposed to
+ * fall back to the full metadata parsing then.
+ */
+final class ExifDateReader {
+  private static final int WINDOW_SIZE = 16 * 1024;
+  private static final int MAX_JPEG_SEGMENTS = 32;
+  private static final int MAX_IFD_ENTRIES = 1024;
+  private static final int IFD_ENTRY_SIZE = 12;
+  private static final int TAG_EXIF_SUB_IFD_OFFSET = 0x8769;
+  private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+  private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+  private static final int TAG_SUBSEC_TIME_ORIGINAL = 0x9291;
+  private static final int MAX_TAG_LENGTH = 16;
+  private static final Pattern OFFSET = Pattern.compile("[+-]\\d{2}:\\d{2}");
+  private static final int TYPE_ASCII = 2;
+  private static final int DATE_LENGTH = 19;
+  private static final String DATE_FORMAT = "yyyy:MM:dd HH:mm:ss";
+  private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+  private static final ThreadLocal<ByteBuffer> WINDOW = ThreadLocal.withInitial(() ->
+      ByteBuffer.allocateDirect(WINDOW_SIZE));
+  private static final ThreadLocal<SimpleDateFormat> SDF = ThreadLocal.withInitial(() -> {
+    SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
+    sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+    sdf.setLenient(false);
+    return sdf;
+  });
+  private final FileChannel channel;
+  private final ByteBuffer window;
+  private long windowPos;
+  private int windowLength;
+
+  private ExifDateReader(FileChannel channel) {
+    this.channel = channel;
+    this.window = WINDOW.get();
+    this.windowLength = 0;
+  }
+
+  /**
+  * @param file a JPEG or TIFF based image file.
+  * @return the original date of the image or null if it could not be found
+  *     on the fast path.
+  * @throws IOException if the file can not be read.
+  */
+  static DateTaken readDateTimeOriginal(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new ExifDateReader(channel).read();
+    }
+  }
+
+  /**
+  * @param subSecond digits of a fraction of a second as of the
+  *     SubSecTimeOriginal tag, null if there is no tag.
+  * @return milliseconds of the fraction, 0 if the digits are not a fraction.
+  */
+  static int parseSubSecond(String subSecond) {
+    if (null == subSecond) {
+      return 0;
+    }
+    String digits = subSecond.trim();
+    if (! digits.matches("\\d+")) {
+      return 0;
+    }
+    digits = (digits + "00").substring(0, 3);
+    return Integer.parseInt(digits);
+  }
+
+  /**
+  * @param offset an offset as of the OffsetTimeOriginal tag, {@code +HH:MM},
+  *     null if there is no tag.
+  * @return a time zone of the offset or null if the offset is not valid.
+  */
+  static TimeZone parseOffset(String offset) {
+    if (null == offset || ! OFFSET.matcher(offset.trim()).matches()) {
+      return null;
+    }
+    return TimeZone.getTimeZone("GMT" + offset.trim());
+  }
+
+  private DateTaken read() throws IOException {
+    window.order(ByteOrder.BIG_ENDIAN);
+    long tiffPos = 0;
+    if (u8(0) == 0xFF && u8(1) == 0xD8) {
+      tiffPos = findJpegTiff();
+      if (tiffPos < 0) {
+        return null;
+      }
+    }
+    if (u8(tiffPos) == 'I' && u8(tiffPos + 1) == 'I') {
+      window.order(ByteOrder.LITTLE_ENDIAN);
+    } else if (! (u8(tiffPos) == 'M' && u8(tiffPos + 1) == 'M')) {
+      return null;
+    }
+    if (u16(tiffPos + 2) != 42) {
+      return null;
+    }
+    long exifIfdEntry = findTag(tiffPos + u32(tiffPos + 4), TAG_EXIF_SUB_IFD_OFFSET);
+    if (exifIfdEntry < 0) {
+      return null;
+    }
+    long exifIfdPos = tiffPos + u32(exifIfdEntry + 8);
+    long dateEntry = findTag(exifIfdPos, TAG_DATETIME_ORIGINAL);
+    if (dateEntry < 0
+        || u16(dateEntry + 2) != TYPE_ASCII
+        || u32(dateEntry + 4) < DATE_LENGTH)
+    {
+      return null;
+    }
+    long datePos = tiffPos + u32(dateEntry + 8);
+    ensure(datePos, DATE_LENGTH);
+    byte[] date = new byte[DATE_LENGTH];
+    for (int i = 0; i < DATE_LENGTH; i++) {
+      date[i] = window.get((int) (datePos - windowPos) + i);
+    }
+    Date dateTimeOriginal;
+    try {
+      dateTimeOriginal = SDF.get().parse(new String(date, StandardCharsets.US_ASCII));
+    } catch (ParseException e) {
+      return null;
+    }
+    int millis = parseSubSecond(ascii(tiffPos, findTag(exifIfdPos, TAG_SUBSEC_TIME_ORIGINAL)));
+    TimeZone timeZone = parseOffset(ascii(tiffPos,
+        findTag(exifIfdPos, TAG_OFFSET_TIME_ORIGINAL)));
+    return new DateTaken(new Date(dateTimeOriginal.getTime() + millis), timeZone);
+  }
+
+  /**
+  * @param entryPos a position of an IFD entry, -1 if there is no entry.
+  * @return a short ASCII value of the entry up to the first NUL or null if
+  *     the entry is not a short ASCII one.
+  */
+  private String ascii(long tiffPos, long entryPos) throws IOException {
+    if (entryPos < 0 || u16(entryPos + 2) != TYPE_ASCII) {
+      return null;
+    }
+    long count = u32(entryPos + 4);
+    if (count > MAX_TAG_LENGTH) {
+      return null;
+    }
+    // values of four bytes or less are kept in the entry itself
+    long valuePos = count <= 4 ? entryPos + 8 : tiffPos + u32(entryPos + 8);
+    ensure(valuePos, (int) count);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      byte b = window.get((int) (valuePos - windowPos) + i);
+      if (b == 0) {
+        break;
+      }
+      sb.append((char) b);
+    }
+    return sb.toString();
+  }
+
+  /**
+  * @return a position of the TIFF header in the Exif APP1 segment or -1 if
+  *     there is no such segment before the image data.
+  */
+  private long findJpegTiff() throws IOException {
+    long pos = 2;
+    for (int i = 0; i < MAX_JPEG_SEGMENTS; i++) {
+      if (u8(pos) != 0xFF) {
+        return -1;
+      }
+      int marker = u8(pos + 1);
+      if (marker == 0xFF) {
+        pos++;
+        continue;
+      }
+      if (marker == 0xDA || marker == 0xD9) {
+        return -1;
+      }
+      int length = u16(pos + 2);
+      if (marker == 0xE1 && length >= 2 + EXIF_HEADER.length + 8) {
+        ensure(pos + 4, EXIF_HEADER.length);
+        boolean exif = true;
+        for (int j = 0; j < EXIF_HEADER.length && exif; j++) {
+          exif = window.get((int) (pos + 4 - windowPos) + j) == EXIF_HEADER[j];
+        }
+        if (exif) {
+          return pos + 4 + EXIF_HEADER.length;
+        }
+      }
+      pos += 2 + length;
+    }
+    return -1;
+  }
+
+  /**
+  * @return a position of the IFD entry with the tag or -1 if there is no one.
+  */
+  private long findTag(long ifdPos, int tag) throws IOException {
+    int count = u16(ifdPos);
+    if (count > MAX_IFD_ENTRIES) {
+      return -1;
+    }
+    for (int i = 0; i < count; i++) {
+      long entryPos = ifdPos + 2 + (long) i * IFD_ENTRY_SIZE;
+      if (u16(entryPos) == tag) {
+        return entryPos;
+      }
+    }
+    return -1;
+  }
+
+  private int u8(long pos) throws IOException {
+    ensure(pos, 1);
+    return window.get((int) (pos - windowPos)) & 0xFF;
+  }
+
+  private int u16(long pos) throws IOException {
+    ensure(pos, 2);
+    return window.getShort((int) (pos - windowPos)) & 0xFFFF;
+  }
+
+  private long u32(long pos) throws IOException {
+    ensure(pos, 4);
+    return window.getInt((int) (pos - windowPos)) & 0xFFFFFFFFL;
+  }
+
+  /**
+  * Moves the window so that it covers the requested bytes.
+  */
+  private void ensure(long pos, int length) throws IOException {
+    if (windowLength > 0 && pos >= windowPos && pos + length <= windowPos + windowLength) {
+      return;
+    }
+    window.clear();
+    while (window.hasRemaining()) {
+      if (channel.read(window, pos + window.position()) < 0) {
+        break;
+      }
+    }
+    windowPos = pos;
+    windowLength = window.position();
+    if (windowLength < length) {
+      throw new EOFException(String.format("Unexpected end of file at %s", pos));
+    }
+  }
+
+  /**
+   * An original date of an image with its time zone.
+   */
+  static final class DateTaken {
+    private final Date date;
+    private final TimeZone timeZone;
+
+    DateTaken(Date date, TimeZone timeZone) {
+      this.date = date;
+      this.timeZone = timeZone;
+    }
+
+    /**
+    * @return the local date and time with milliseconds, kept as of GMT.
+    */
+    Date getDate() {
+      return date;
+    }
+
+    /**
+    * @return a time zone of the offset the image has or null if it has no one.
+    */
+    TimeZone getTimeZone() {
+      return timeZone;
+    }
+  }
+}
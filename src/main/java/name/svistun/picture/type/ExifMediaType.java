@@ -0,0 +1,106 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.MediaType;
+import name.svistun.picture.MediaTypes;
+import name.svistun.picture.NotImageFileException;
+import name.svistun.picture.Picture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.drew.imaging.ImageProcessingException;
+
+/**
+ * Images of Exif metadata: JPEG, TIFF based raw images (NEF, DNG, ARW, CR2)
+ * and HEIF. Extensions other than NEF and JPG are optional.
+ */
+public final class ExifMediaType implements MediaType {
+  private static final Set<String> EXTS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("nef", "jpg")));
+  private static final Set<String> OPTIONAL_EXTS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("jpeg", "dng", "arw", "cr2", "heic", "heif")));
+  private static final Set<String> HEIF_BRANDS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("heic", "heix", "heim", "heis", "mif1")));
+  private static final byte[] JPEG_SOI = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+  private static final byte[] TIFF_LITTLE_ENDIAN = {'I', 'I', 42, 0};
+  private static final byte[] TIFF_BIG_ENDIAN = {'M', 'M', 0, 42};
+  private static final Pattern PATTERN_PHOTO_FILE = Pattern.compile("(.+)(\\.(.+))");
+
+  @Override
+  public Set<String> getExtensions() {
+    return EXTS;
+  }
+
+  @Override
+  public Set<String> getOptionalExtensions() {
+    return OPTIONAL_EXTS;
+  }
+
+  @Override
+  public boolean matches(byte[] head, int length) {
+    return MediaTypes.matches(head, length, 0, JPEG_SOI)
+        || MediaTypes.matches(head, length, 0, TIFF_LITTLE_ENDIAN)
+        || MediaTypes.matches(head, length, 0, TIFF_BIG_ENDIAN)
+        || HEIF_BRANDS.contains(MediaTypes.getBrand(head, length));
+  }
+
+  @Override
+  public Picture read(File file) throws IOException,
+      ImageProcessingException,
+      NotImageFileException
+  {
+    return new Exif(file);
+  }
+
+  /**
+  * {@inheritDoc}
+  * <p>
+  * The sidecar is looked up again rather than taken from the cache, a sidecar
+  * may have been added or deleted since the photo was cached.
+  */
+  @Override
+  public Picture cached(File file, Date dateTaken, File paramFile) {
+    Matcher matcher = PATTERN_PHOTO_FILE.matcher(file.getName());
+    SidecarIndex.Sidecar sidecar = null;
+    if (matcher.matches()) {
+      try {
+        sidecar = Exif.findSidecar(file, matcher.group(1));
+      } catch (IOException e) {
+        // reading the photo reports the problem
+        return null;
+      }
+    }
+    return new Exif(file, dateTaken, null == sidecar ? null : sidecar.getFile());
+  }
+}
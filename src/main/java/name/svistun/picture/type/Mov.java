@@ -23,7 +23,9 @@ package name.svistun.picture.type;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
+import name.svistun.picture.Metrics;
 import name.svistun.picture.Picture;
+import name.svistun.picture.StageEvents;
 
 import java.io.File;
 import java.io.IOException;
@@ -38,18 +40,42 @@ public final class Mov extends Picture {
   
   public Mov(File videoFile) throws ImageProcessingException, IOException {
     super(videoFile);
-    initDateTaken();
+    long start = Metrics.start();
+    Object event = StageEvents.begin(Metrics.Stage.READ_MOV);
+    boolean read = false;
+    try {
+      initDateTaken();
+      read = true;
+    } finally {
+      Metrics.stop(Metrics.Stage.READ_MOV, start);
+      StageEvents.end(event, videoFile, getClass().getSimpleName(), read);
+    }
+  }
+
+  /**
+  * Creates a video with already known metadata, the video file is not read.
+  */
+  public Mov(File videoFile, Date dateTaken) {
+    super(videoFile);
+    setDateTaken(dateTaken);
   }
 
   @Override
   protected void initDateTaken() throws ImageProcessingException, IOException {
     Date dateTaken = null;
-    Metadata metadata = ImageMetadataReader.readMetadata(getPictureFile());
-    // obtain the QuickTime directory
-    for (QuickTimeDirectory directory : metadata.getDirectoriesOfType(QuickTimeDirectory.class)) {
-      dateTaken = directory.getDate(QuickTimeDirectory.TAG_CREATION_TIME);
-      if (dateTaken != null) {
-        break;
+    try {
+      dateTaken = QuickTimeDateReader.readCreationTime(getPictureFile());
+    } catch (IOException e) {
+      // the fast path failed, let the full metadata parsing report the problem
+    }
+    if (null == dateTaken) {
+      Metadata metadata = ImageMetadataReader.readMetadata(getPictureFile());
+      // obtain the QuickTime directory
+      for (QuickTimeDirectory directory : metadata.getDirectoriesOfType(QuickTimeDirectory.class)) {
+        dateTaken = directory.getDate(QuickTimeDirectory.TAG_CREATION_TIME);
+        if (dateTaken != null) {
+          break;
+        }
       }
     }
     if (null == dateTaken) {
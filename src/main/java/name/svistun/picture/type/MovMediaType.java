@@ -0,0 +1,76 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.MediaType;
+import name.svistun.picture.MediaTypes;
+import name.svistun.picture.Picture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.drew.imaging.ImageProcessingException;
+
+/**
+ * QuickTime videos.
+ */
+public final class MovMediaType implements MediaType {
+  private static final Set<String> EXTS = Collections.singleton("mov");
+  private static final String BRAND = "qt  ";
+  // old QuickTime files have no file type box and start with one of these atoms
+  private static final Set<String> FIRST_ATOMS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("moov", "mdat", "wide", "free", "skip", "pnot")));
+
+  @Override
+  public Set<String> getExtensions() {
+    return EXTS;
+  }
+
+  @Override
+  public boolean matches(byte[] head, int length) {
+    String brand = MediaTypes.getBrand(head, length);
+    if (null != brand) {
+      return BRAND.equals(brand);
+    }
+    return length >= 8
+        && FIRST_ATOMS.contains(new String(head, 4, 4, StandardCharsets.US_ASCII));
+  }
+
+  @Override
+  public Picture read(File file) throws IOException, ImageProcessingException {
+    return new Mov(file);
+  }
+
+  @Override
+  public Picture cached(File file, Date dateTaken, File paramFile) {
+    return new Mov(file, dateTaken);
+  }
+}
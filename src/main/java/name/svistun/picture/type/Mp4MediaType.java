@@ -0,0 +1,75 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.MediaType;
+import name.svistun.picture.MediaTypes;
+import name.svistun.picture.Picture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.drew.imaging.ImageProcessingException;
+
+/**
+ * MPEG-4 videos. The M4V extension is optional.
+ */
+public final class Mp4MediaType implements MediaType {
+  private static final Set<String> EXTS = Collections.singleton("mp4");
+  private static final Set<String> OPTIONAL_EXTS = Collections.singleton("m4v");
+  private static final Set<String> BRANDS = Collections.unmodifiableSet(new HashSet<>(
+      Arrays.asList("isom", "iso2", "iso4", "iso5", "iso6", "mp41", "mp42", "avc1", "M4V ",
+          "M4VH", "M4VP", "MSNV", "3gp4", "3gp5", "3gp6", "dash")));
+
+  @Override
+  public Set<String> getExtensions() {
+    return EXTS;
+  }
+
+  @Override
+  public Set<String> getOptionalExtensions() {
+    return OPTIONAL_EXTS;
+  }
+
+  @Override
+  public boolean matches(byte[] head, int length) {
+    return BRANDS.contains(MediaTypes.getBrand(head, length));
+  }
+
+  @Override
+  public Picture read(File file) throws IOException, ImageProcessingException {
+    return new Mp4(file);
+  }
+
+  @Override
+  public Picture cached(File file, Date dateTaken, File paramFile) {
+    return new Mp4(file, dateTaken);
+  }
+}
@@ -0,0 +1,156 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+
+/**
+ * Reads the creation time of a QuickTime or MP4 movie from its
+ * {@code moov/mvhd} box.
+ * <p>
+ * The reader jumps from one box header to the next one, so media data boxes
+ * are skipped without being read wherever the {@code moov} box is. The reader
+ * gives up by returning null on anything it does not expect, the caller is
+ * supposed to fall back to the full metadata parsing then.
+ */
+final class QuickTimeDateReader {
+  private static final int MAX_BOXES = 1024;
+  private static final int HEADER_SIZE = 8;
+  private static final int LARGE_HEADER_SIZE = 16;
+  private static final int MOOV = fourCc("moov");
+  private static final int MVHD = fourCc("mvhd");
+  /** Seconds between 1904-01-01 and 1970-01-01. */
+  private static final long EPOCH_OFFSET = 2082844800L;
+  private final FileChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocate(LARGE_HEADER_SIZE);
+  private long boxPos;
+  private long boxSize;
+  private int boxHeaderSize;
+  private int boxType;
+
+  private QuickTimeDateReader(FileChannel channel) {
+    this.channel = channel;
+  }
+
+  /**
+  * @param file a QuickTime or MP4 movie file.
+  * @return the creation time of the movie or null if it could not be found
+  *     on the fast path.
+  * @throws IOException if the file can not be read.
+  */
+  static Date readCreationTime(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new QuickTimeDateReader(channel).read();
+    }
+  }
+
+  private Date read() throws IOException {
+    if (! findBox(0, channel.size(), MOOV)) {
+      return null;
+    }
+    long moovEnd = boxPos + boxSize;
+    if (! findBox(boxPos + boxHeaderSize, moovEnd, MVHD)) {
+      return null;
+    }
+    long contentPos = boxPos + boxHeaderSize;
+    if (! fill(contentPos, 4)) {
+      return null;
+    }
+    // a full box header of one byte version and three bytes of flags
+    int version = buffer.get(0);
+    long creationTime;
+    if (version == 0 && fill(contentPos + 4, 4)) {
+      creationTime = buffer.getInt(0) & 0xFFFFFFFFL;
+    } else if (version == 1 && fill(contentPos + 4, 8)) {
+      creationTime = buffer.getLong(0);
+    } else {
+      return null;
+    }
+    if (creationTime <= 0) {
+      return null;
+    }
+    return new Date((creationTime - EPOCH_OFFSET) * 1000L);
+  }
+
+  /**
+  * Looks for the first box of the type between the positions, the found box
+  * is described by the box fields then.
+  *
+  * @return true if the box is found.
+  */
+  private boolean findBox(long pos, long end, int type) throws IOException {
+    for (int i = 0; i < MAX_BOXES && pos + HEADER_SIZE <= end; i++) {
+      if (! readHeader(pos, end) || pos + boxSize > end) {
+        return false;
+      }
+      if (boxType == type) {
+        return true;
+      }
+      pos += boxSize;
+    }
+    return false;
+  }
+
+  private boolean readHeader(long pos, long end) throws IOException {
+    if (! fill(pos, HEADER_SIZE)) {
+      return false;
+    }
+    boxPos = pos;
+    boxType = buffer.getInt(4);
+    boxSize = buffer.getInt(0) & 0xFFFFFFFFL;
+    boxHeaderSize = HEADER_SIZE;
+    if (boxSize == 1) {
+      if (! fill(pos, LARGE_HEADER_SIZE)) {
+        return false;
+      }
+      boxSize = buffer.getLong(HEADER_SIZE);
+      boxHeaderSize = LARGE_HEADER_SIZE;
+    } else if (boxSize == 0) {
+      // the box extends to the end of its parent
+      boxSize = end - pos;
+    }
+    return boxSize >= boxHeaderSize;
+  }
+
+  private boolean fill(long pos, int length) throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, pos + buffer.position()) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int fourCc(String type) {
+    return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+  }
+}
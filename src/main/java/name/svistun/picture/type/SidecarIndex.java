@@ -0,0 +1,286 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import name.svistun.picture.MediaTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Sidecar files of the pictures of a single directory.
+ * <p>
+ * Sidecar folders are listed once per directory and the result is shared by
+ * all the pictures of the directory. A sidecar is matched by its name without
+ * the sidecar extension, which is either the picture file name
+ * ({@code DSC_0001.NEF.nksc}) or the picture base name ({@code DSC_0001.xmp}).
+ * <p>
+ * A sidecar of the base name may be shared by a pair of pictures, e.g.
+ * {@code DSC_0001.NEF} and {@code DSC_0001.JPG}. It belongs to the picture
+ * whose file name sorts first, so that it is renamed once, along with that
+ * picture, and the other picture of the pair is renamed without it.
+ */
+public final class SidecarIndex {
+  /** Sidecar conventions used unless configured otherwise. */
+  public static final String[] DEFAULT_SIDECARS = {"nksc:NKSC_PARAM", "xmp"};
+  private static final int CACHE_CAPACITY = 64;
+  private static final Map<File, SidecarIndex> CACHE = Collections.synchronizedMap(
+      new LinkedHashMap<File, SidecarIndex>(CACHE_CAPACITY, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, SidecarIndex> eldest) {
+          return size() > CACHE_CAPACITY;
+        }
+      });
+  private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+  private static volatile Map<String, String> sidecarExtToFolderNameMap = parse(DEFAULT_SIDECARS);
+  private final File dir;
+  // a lock rather than a monitor, a virtual thread listing under a monitor pins its carrier
+  private final Lock listing = new ReentrantLock();
+  private Map<String, Map<String, File>> sidecarExtToFilesMap;
+  private Map<String, String> baseNameToOwnerMap;
+
+  private SidecarIndex(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+  * @param sidecars sidecar conventions as {@code extension[:folder]}, a sidecar
+  *     without a folder is looked up in the directory of the picture.
+  */
+  public static void configure(String[] sidecars) {
+    sidecarExtToFolderNameMap = parse(sidecars);
+    CACHE.clear();
+  }
+
+  /**
+  * @param dir a directory with pictures.
+  * @return the sidecar index shared by all the pictures of the directory.
+  */
+  public static SidecarIndex forDirectory(File dir) {
+    synchronized (CACHE) {
+      SidecarIndex index = CACHE.get(dir);
+      if (null == index) {
+        index = new SidecarIndex(dir);
+        CACHE.put(dir, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+  * Forgets sidecar files of the directory, to be called once files of the
+  * directory are changed.
+  *
+  * @param dir a directory with pictures.
+  */
+  public static void invalidate(File dir) {
+    CACHE.remove(dir);
+  }
+
+  /**
+  * @param ext a file extension.
+  * @return true if files with the extension are sidecar files.
+  */
+  public static boolean isSidecarExt(String ext) {
+    return sidecarExtToFolderNameMap.containsKey(ext.toLowerCase());
+  }
+
+  /**
+  * @param name a name of a directory.
+  * @return true if sidecar files are kept in directories of the name.
+  */
+  public static boolean isSidecarFolder(String name) {
+    for (String folderName : sidecarExtToFolderNameMap.values()) {
+      if (null != folderName && name.equals(new File(folderName).toPath().getName(0).toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+  * @param pictureExt an extension of a picture file.
+  * @param sidecarExt an extension of a sidecar file.
+  * @return a pattern which splits the sidecar file name into a base name and
+  *     extensions.
+  */
+  public static Pattern getPattern(String pictureExt, String sidecarExt) {
+    return PATTERNS.computeIfAbsent(pictureExt + File.pathSeparator + sidecarExt,
+        key -> Pattern.compile(String.format("(.+?)((\\.(%s))?\\.((?i:%s)))",
+            Pattern.quote(pictureExt),
+            Pattern.quote(sidecarExt))));
+  }
+
+  /**
+  * @param pictureFileName a name of a picture file.
+  * @param pictureBaseName the name of the picture file without its extension.
+  * @return a sidecar file of the picture or null if the picture has no one.
+  * @throws IOException if a sidecar folder can not be listed.
+  */
+  public Sidecar find(String pictureFileName, String pictureBaseName) throws IOException {
+    for (Map.Entry<String, Map<String, File>> entry : getSidecarExtToFilesMap().entrySet()) {
+      File sidecarFile = entry.getValue().get(pictureFileName);
+      if (null == sidecarFile) {
+        sidecarFile = entry.getValue().get(pictureBaseName);
+        if (null != sidecarFile
+            && ! pictureFileName.equals(getBaseNameToOwnerMap().get(pictureBaseName)))
+        {
+          sidecarFile = null;
+        }
+      }
+      if (null != sidecarFile) {
+        return new Sidecar(sidecarFile, entry.getKey());
+      }
+    }
+    return null;
+  }
+
+  private Map<String, Map<String, File>> getSidecarExtToFilesMap()
+      throws IOException
+  {
+    listing.lock();
+    try {
+      if (null == sidecarExtToFilesMap) {
+        Map<String, Map<String, File>> map = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : sidecarExtToFolderNameMap.entrySet()) {
+          File sidecarFolder = null == entry.getValue()
+              ? dir
+              : new File(dir, entry.getValue());
+          map.put(entry.getKey(), list(sidecarFolder, entry.getKey()));
+        }
+        sidecarExtToFilesMap = map;
+      }
+      return sidecarExtToFilesMap;
+    } finally {
+      listing.unlock();
+    }
+  }
+
+  /**
+  * @return a map of a picture base name to the file name of the picture which
+  *     owns sidecars of the base name.
+  */
+  private Map<String, String> getBaseNameToOwnerMap() throws IOException {
+    listing.lock();
+    try {
+      if (null == baseNameToOwnerMap) {
+        Map<String, String> map = new HashMap<>();
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(dir.toPath())) {
+          for (Path path : dirStream) {
+            String name = path.getFileName().toString();
+            if (MediaTypes.forName(name) instanceof ExifMediaType) {
+              map.merge(name.substring(0, name.lastIndexOf('.')), name,
+                  (owner, other) -> owner.compareTo(other) <= 0 ? owner : other);
+            }
+          }
+        } catch (DirectoryIteratorException e) {
+          throw e.getCause();
+        }
+        baseNameToOwnerMap = map;
+      }
+      return baseNameToOwnerMap;
+    } finally {
+      listing.unlock();
+    }
+  }
+
+  private static Map<String, File> list(File sidecarFolder, String sidecarExt)
+      throws IOException
+  {
+    Map<String, File> sidecarFiles = new HashMap<>();
+    if (! sidecarFolder.isDirectory()) {
+      return sidecarFiles;
+    }
+    String suffix = "." + sidecarExt;
+    try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(sidecarFolder.toPath())) {
+      for (Path path : dirStream) {
+        String name = path.getFileName().toString();
+        if (name.length() > suffix.length()
+            && name.regionMatches(true, name.length() - suffix.length(),
+                suffix, 0, suffix.length()))
+        {
+          sidecarFiles.put(name.substring(0, name.length() - suffix.length()), path.toFile());
+        }
+      }
+    } catch (DirectoryIteratorException e) {
+      throw e.getCause();
+    }
+    return sidecarFiles;
+  }
+
+  private static Map<String, String> parse(String[] sidecars) {
+    Map<String, String> map = new LinkedHashMap<>();
+    for (String sidecar : sidecars) {
+      int separator = sidecar.indexOf(':');
+      if (separator < 0) {
+        map.put(sidecar.toLowerCase(), null);
+      } else {
+        map.put(sidecar.substring(0, separator).toLowerCase(), sidecar.substring(separator + 1));
+      }
+    }
+    return map;
+  }
+
+  /**
+   * A sidecar file found for a picture.
+   */
+  public static final class Sidecar {
+    private final File file;
+    private final String ext;
+
+    Sidecar(File file, String ext) {
+      this.file = file;
+      this.ext = ext;
+    }
+
+    /**
+    * @return the sidecar file.
+    */
+    public File getFile() {
+      return file;
+    }
+
+    /**
+    * @return the extension of the sidecar file convention.
+    */
+    public String getExt() {
+      return ext;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emits stage events to Java Flight Recorder. Loaded by {@link StageEvents}
+ * if the JVM has JFR.
+ */
+final class JfrStageEvents implements StageEvents.Sink {
+
+  @Override
+  public Object begin(Metrics.Stage stage) {
+    FileEvent event;
+    switch (stage) {
+      case GET_PICTURE:
+        event = new GetPictureEvent();
+        break;
+      case READ_EXIF:
+      case READ_MP4:
+      case READ_MOV:
+        event = new ReadMetadataEvent();
+        break;
+      case FIND_SIDECAR:
+        event = new FindSidecarEvent();
+        break;
+      case RENAME:
+        event = new RenameEvent();
+        break;
+      default:
+        return null;
+    }
+    if (! event.isEnabled()) {
+      return null;
+    }
+    event.begin();
+    return event;
+  }
+
+  @Override
+  public void end(Object event, File file, String type, boolean success) {
+    FileEvent fileEvent = (FileEvent) event;
+    fileEvent.end();
+    if (fileEvent.shouldCommit()) {
+      fileEvent.path = file.getAbsolutePath();
+      fileEvent.type = type;
+      fileEvent.bytes = file.length();
+      fileEvent.success = success;
+      fileEvent.commit();
+    }
+  }
+
+  @Category("Picture Rename")
+  @Enabled(false)
+  @StackTrace(false)
+  private abstract static class FileEvent extends Event {
+    @Label("Path")
+    String path;
+    @Label("Type")
+    String type;
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+    @Label("Success")
+    boolean success;
+  }
+
+  @Name("name.svistun.picture.GetPicture")
+  @Label("Get Picture")
+  private static final class GetPictureEvent extends FileEvent {}
+
+  @Name("name.svistun.picture.ReadMetadata")
+  @Label("Read Metadata")
+  private static final class ReadMetadataEvent extends FileEvent {}
+
+  @Name("name.svistun.picture.FindSidecar")
+  @Label("Find Sidecar")
+  private static final class FindSidecarEvent extends FileEvent {}
+
+  @Name("name.svistun.picture.Rename")
+  @Label("Rename")
+  private static final class RenameEvent extends FileEvent {}
+}
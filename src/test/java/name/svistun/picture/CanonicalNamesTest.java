@@ -0,0 +1,75 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Names of date formats recognized without reading the pictures.
+ */
+public class CanonicalNamesTest {
+
+  @Test
+  public void matchesNamesOfDefaultFormat() {
+    CanonicalNames names = new CanonicalNames("yyyyMMdd'T'HHmmss", 0);
+    assertTrue(names.matches("20210304T050607.jpg"));
+    assertTrue(names.matches("20210304T050607_12.NEF"));
+    assertFalse(names.matches("20210304T050607_0.jpg"));
+    assertFalse(names.matches("20210304X050607.jpg"));
+    assertFalse(names.matches("2021034T050607.jpg"));
+    assertFalse(names.matches("20210304T050607"));
+    assertFalse(names.matches("IMG_0001.jpg"));
+  }
+
+  @Test
+  public void matchesTextFieldsAndQuotes() {
+    CanonicalNames names = new CanonicalNames("dd MMM yyyy 'at' HH.mm.ss''SSS Z", 0);
+    assertTrue(names.matches("04 Mar 2021 at 05.06.07'250 +0200.jpg"));
+    assertFalse(names.matches("04 Mar 2021 on 05.06.07'250 +0200.jpg"));
+    assertFalse(names.matches("04 Mar 2021 at 05.06.07'250 0200.jpg"));
+  }
+
+  @Test
+  public void quotedLettersAreText() {
+    CanonicalNames names = new CanonicalNames("'yyyy'-yyyy", 0);
+    assertTrue(names.matches("yyyy-2021.jpg"));
+    assertFalse(names.matches("2021-2021.jpg"));
+  }
+
+  @Test
+  public void skipsPicturesUnlessSampled() {
+    File picture = new File("20210304T050607.jpg");
+    assertTrue(new CanonicalNames("yyyyMMdd'T'HHmmss", 0).skips(picture));
+    assertFalse(new CanonicalNames("yyyyMMdd'T'HHmmss", 1).skips(picture));
+    // files of no picture type are left to the scan to report
+    assertFalse(new CanonicalNames("yyyyMMdd'T'HHmmss", 0).skips(
+        new File("20210304T050607.txt")));
+  }
+}
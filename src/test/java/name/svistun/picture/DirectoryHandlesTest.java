@@ -0,0 +1,123 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Files probed and renamed relative to directory handles.
+ */
+public class DirectoryHandlesTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  private final DirectoryHandles handles = new DirectoryHandles();
+
+  @After
+  public void tearDown() {
+    handles.close();
+  }
+
+  @Test
+  public void existsDoesNotFollowLinks() throws IOException {
+    File file = folder.newFile("a.jpg");
+    File link = new File(folder.getRoot(), "link.jpg");
+    Files.createSymbolicLink(link.toPath(), new File(folder.getRoot(), "gone.jpg").toPath());
+    assertTrue(handles.exists(file));
+    assertTrue(handles.exists(link));
+    assertFalse(handles.exists(new File(folder.getRoot(), "gone.jpg")));
+    assertTrue(handles.isWritable(folder.getRoot()));
+  }
+
+  @Test
+  public void renamesInAndAcrossDirectories() throws IOException {
+    File file = folder.newFile("a.jpg");
+    File newFile = new File(folder.getRoot(), "b.jpg");
+    handles.rename(file, newFile);
+    assertFalse(handles.exists(file));
+    assertTrue(handles.exists(newFile));
+    File otherFile = new File(folder.newFolder("other"), "c.jpg");
+    handles.rename(newFile, otherFile);
+    assertTrue(otherFile.isFile());
+    assertFalse(newFile.exists());
+  }
+
+  @Test
+  public void renamesInMoreDirectoriesThanHandlesKept() throws IOException {
+    for (int i = 0; i < 100; i++) {
+      File dir = folder.newFolder("dir" + i);
+      File file = new File(dir, "a.jpg");
+      file.createNewFile();
+      handles.rename(file, new File(dir, "b.jpg"));
+    }
+    for (int i = 0; i < 100; i++) {
+      assertTrue(handles.exists(new File(new File(folder.getRoot(), "dir" + i), "b.jpg")));
+    }
+  }
+
+  @Test
+  public void renameDoesNotReplaceExistingFile() throws IOException {
+    File file = folder.newFile("a.jpg");
+    File newFile = folder.newFile("b.jpg");
+    Files.write(newFile.toPath(), new byte[] {1});
+    try {
+      handles.rename(file, newFile);
+      fail("renamed over an existing file");
+    } catch (FileAlreadyExistsException e) {
+      // expected
+    }
+    assertTrue(file.isFile());
+    assertEquals(1, newFile.length());
+  }
+
+  @Test
+  public void renameCompletesInterruptedLink() throws IOException {
+    File file = folder.newFile("a.jpg");
+    File newFile = new File(folder.getRoot(), "b.jpg");
+    Files.createLink(newFile.toPath(), file.toPath());
+    assertTrue(handles.isLinked(file, newFile));
+    handles.rename(file, newFile);
+    assertFalse(file.exists());
+    assertTrue(newFile.isFile());
+    assertFalse(handles.isLinked(file, newFile));
+  }
+
+  @Test(expected = IOException.class)
+  public void renameOfMissingFileFails() throws IOException {
+    handles.rename(new File(folder.getRoot(), "gone.jpg"), new File(folder.getRoot(), "b.jpg"));
+  }
+}
@@ -0,0 +1,118 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Copies found among files of sizes around the samples of the head and the
+ * tail, 64 KiB each.
+ */
+public class DuplicateFinderTest {
+  private static final int KIB = 1024;
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  private final DuplicateFinder finder = new DuplicateFinder(DuplicateFinder.Policy.REPORT);
+
+  @Test
+  public void findsCopyOfSmallFile() throws IOException {
+    byte[] content = content(10 * KIB);
+    File copy = write("copy", content);
+    File other = write("other", changed(content, 5 * KIB));
+    File original = write("original", content);
+    assertEquals(original, finder.find(copy, Arrays.asList(other, original)));
+  }
+
+  @Test
+  public void comparesFileOfOverlappingSamples() throws IOException {
+    // the tail sample starts after the head one, so it covers the whole file
+    byte[] content = content(100 * KIB);
+    File copy = write("copy", content);
+    assertNull(finder.find(copy, Arrays.asList(write("other", changed(content, 70 * KIB)))));
+    assertEquals(copy, finder.find(write("original", content), Arrays.asList(copy)));
+  }
+
+  @Test
+  public void comparesFileCoveredBySamples() throws IOException {
+    byte[] content = content(128 * KIB);
+    File copy = write("copy", content);
+    assertNull(finder.find(copy, Arrays.asList(write("other", changed(content, 64 * KIB)))));
+    assertEquals(copy, finder.find(write("original", content), Arrays.asList(copy)));
+  }
+
+  @Test
+  public void comparesWholeLargerFile() throws IOException {
+    byte[] content = content(200 * KIB);
+    File copy = write("copy", content);
+    // a byte neither sample covers
+    assertNull(finder.find(copy, Arrays.asList(write("other", changed(content, 100 * KIB)))));
+    assertEquals(copy, finder.find(write("original", content), Arrays.asList(copy)));
+  }
+
+  @Test
+  public void filesOfOtherSizesDiffer() throws IOException {
+    byte[] content = content(100 * KIB);
+    File copy = write("copy", content);
+    assertNull(finder.find(copy, Arrays.asList(write("other",
+        Arrays.copyOf(content, content.length + 1)))));
+  }
+
+  @Test
+  public void hardLinkIsSame() throws IOException {
+    File original = write("original", content(KIB));
+    File link = new File(folder.getRoot(), "link");
+    Files.createLink(link.toPath(), original.toPath());
+    assertEquals(original, finder.find(link, Arrays.asList(original)));
+  }
+
+  private File write(String name, byte[] content) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  private static byte[] content(int size) {
+    byte[] content = new byte[size];
+    new Random(size).nextBytes(content);
+    return content;
+  }
+
+  private static byte[] changed(byte[] content, int position) {
+    byte[] changed = content.clone();
+    changed[position]++;
+    return changed;
+  }
+}
@@ -0,0 +1,148 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Limits of simulated devices: a device serving reads at once and a device
+ * serving them one by one, as a spinning disk does.
+ * <p>
+ * Reads run on the test thread in the order they complete on the simulated
+ * device and are timed by a simulated clock, so the latencies the scheduler
+ * sees do not depend on the load of the machine.
+ */
+public class IoSchedulerTest {
+  private static final int MAX_LIMIT = 32;
+  private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void limitGrowsOnParallelDevice() throws Exception {
+    double limit = run(new SimulatedDevice(false), MAX_LIMIT, 2000);
+    assertEquals(MAX_LIMIT, limit, 0.5);
+  }
+
+  @Test
+  public void limitStaysLowOnSerialDevice() throws Exception {
+    double limit = run(new SimulatedDevice(true), MAX_LIMIT, 2000);
+    assertTrue("limit " + limit, limit < MAX_LIMIT / 4);
+  }
+
+  @Test
+  public void limitDoesNotExceedMaximum() throws Exception {
+    double limit = run(new SimulatedDevice(false), 2, 200);
+    assertTrue("limit " + limit, limit <= 2);
+  }
+
+  /**
+  * Reads the device as many times as given.
+  *
+  * @return the limit the device has come to.
+  */
+  private double run(SimulatedDevice device, int maxLimit, int count) throws Exception {
+    IoScheduler scheduler = new IoScheduler(device, maxLimit, () -> device.now);
+    IoScheduler.Directory dir = scheduler.directory(folder.getRoot().toPath());
+    List<Future<Void>> reads = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      reads.add(scheduler.submit(dir, null, () -> {
+        device.now = device.finish;
+        return null;
+      }));
+    }
+    device.runAll();
+    for (Future<Void> read : reads) {
+      read.get(0, TimeUnit.SECONDS);
+    }
+    return scheduler.getLimit(dir);
+  }
+
+  /**
+   * An executor of reads which takes the service time once they get the
+   * device, either at once or after the reads started before.
+   */
+  private static final class SimulatedDevice implements Executor {
+    private final boolean serial;
+    private final PriorityQueue<Started> started = new PriorityQueue<>(
+        Comparator.comparingLong((Started read) -> read.finish)
+            .thenComparingLong(read -> read.order));
+    private long now;
+    private long finish;
+    private long busyUntil;
+    private long order;
+
+    SimulatedDevice(boolean serial) {
+      this.serial = serial;
+    }
+
+    @Override
+    public void execute(Runnable read) {
+      long begin = serial ? Math.max(now, busyUntil) : now;
+      busyUntil = begin + SERVICE_NANOS;
+      started.add(new Started(read, now, busyUntil, order++));
+    }
+
+    /**
+    * Runs the started reads in the order they finish, a read started from
+    * the end of another one starts at the time that one finishes.
+    */
+    void runAll() {
+      Started read;
+      while (null != (read = started.poll())) {
+        now = read.start;
+        finish = read.finish;
+        read.read.run();
+      }
+    }
+  }
+
+  private static final class Started {
+    private final Runnable read;
+    private final long start;
+    private final long finish;
+    private final long order;
+
+    Started(Runnable read, long start, long finish, long order) {
+      this.read = read;
+      this.start = start;
+      this.finish = finish;
+      this.order = order;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Types looked up by extensions, the optional ones once they are asked for.
+ */
+public class MediaTypesTest {
+
+  @After
+  public void tearDown() {
+    MediaTypes.configure(false);
+  }
+
+  @Test
+  public void defaultExtensionsIgnoreCase() {
+    assertNotNull(MediaTypes.forName("DSC_0001.NEF"));
+    assertSame(MediaTypes.forName("a.nef"), MediaTypes.forName("b.JPG"));
+    assertNotNull(MediaTypes.forName("a.mov"));
+    assertNotNull(MediaTypes.forName("a.Mp4"));
+    assertNull(MediaTypes.forName("a.txt"));
+    assertNull(MediaTypes.forName("nef"));
+  }
+
+  @Test
+  public void optionalExtensionsAreRecognizedOnceConfigured() {
+    assertNull(MediaTypes.forName("a.dng"));
+    assertNull(MediaTypes.forName("a.m4v"));
+    MediaTypes.configure(true);
+    assertSame(MediaTypes.forName("a.nef"), MediaTypes.forName("a.DNG"));
+    assertSame(MediaTypes.forName("a.mp4"), MediaTypes.forName("a.m4v"));
+  }
+}
@@ -0,0 +1,179 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Entries of the cache written, read back and invalidated.
+ */
+public class MetadataCacheTest {
+  private static final Date DATE_TAKEN = new Date(1614834367250L);
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void entriesSurviveReopening() throws IOException {
+    File cacheFile = new File(folder.getRoot(), "metadata.cache");
+    File picture = picture("a.nef");
+    File paramFile = new File(folder.getRoot(), "a.nef.nksc");
+    File other = picture("b.jpg");
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      cache.put(picture, DATE_TAKEN, TimeZone.getTimeZone("GMT+02:00"), paramFile);
+      cache.put(other, DATE_TAKEN, null);
+    }
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      MetadataCache.Entry entry = cache.get(picture);
+      assertEquals(DATE_TAKEN, entry.getDateTaken());
+      assertEquals("GMT+02:00", entry.getTimeZone().getID());
+      assertEquals(paramFile.getAbsoluteFile(), entry.getParamFile());
+      entry = cache.get(other);
+      assertEquals(DATE_TAKEN, entry.getDateTaken());
+      assertNull(entry.getTimeZone());
+      assertNull(entry.getParamFile());
+    }
+  }
+
+  @Test
+  public void changedFileHasNoEntry() throws IOException {
+    File picture = picture("a.jpg");
+    try (MetadataCache cache = new MetadataCache(new File(folder.getRoot(), "metadata.cache"))) {
+      cache.put(picture, DATE_TAKEN, null);
+      Files.write(picture.toPath(), new byte[] {1, 2});
+      assertNull(cache.get(picture));
+    }
+  }
+
+  @Test
+  public void renamedFileKeepsEntry() throws IOException {
+    File picture = picture("a.jpg");
+    File renamed = new File(folder.getRoot(), "20210304T050607.jpg");
+    try (MetadataCache cache = new MetadataCache(new File(folder.getRoot(), "metadata.cache"))) {
+      cache.put(picture, DATE_TAKEN, null);
+      Files.move(picture.toPath(), renamed.toPath());
+      // entries are keyed by files where the file system tells file keys
+      assumeNotNull(Files.readAttributes(renamed.toPath(), BasicFileAttributes.class).fileKey());
+      assertEquals(DATE_TAKEN, cache.get(renamed).getDateTaken());
+    }
+  }
+
+  @Test
+  public void truncatedCacheKeepsEntriesBefore() throws IOException {
+    File cacheFile = new File(folder.getRoot(), "metadata.cache");
+    File picture = picture("a.jpg");
+    File other = picture("b.jpg");
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      cache.put(picture, DATE_TAKEN, null);
+      cache.put(other, DATE_TAKEN, null);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      assertEquals(DATE_TAKEN, cache.get(picture).getDateTaken());
+      assertNull(cache.get(other));
+    }
+  }
+
+  @Test
+  public void damagedRecordIsSkipped() throws IOException {
+    File cacheFile = new File(folder.getRoot(), "metadata.cache");
+    File picture = picture("a.jpg");
+    File other = picture("b.jpg");
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      cache.put(picture, DATE_TAKEN, null);
+      cache.put(other, DATE_TAKEN, null);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+      // a byte of the key of the first record, after the magic and its length
+      file.seek(4 + 4 + 3);
+      int b = file.read();
+      file.seek(4 + 4 + 3);
+      file.write(b ^ 0xFF);
+    }
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      assertNull(cache.get(picture));
+      assertEquals(DATE_TAKEN, cache.get(other).getDateTaken());
+    }
+  }
+
+  @Test
+  public void cachesSharingFileKeepEntriesOfBoth() throws IOException {
+    File cacheFile = new File(folder.getRoot(), "metadata.cache");
+    File picture = picture("a.jpg");
+    File other = picture("b.jpg");
+    try (MetadataCache cache = new MetadataCache(cacheFile);
+        MetadataCache otherCache = new MetadataCache(cacheFile))
+    {
+      cache.put(picture, DATE_TAKEN, null);
+      otherCache.put(other, DATE_TAKEN, null);
+    }
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      assertEquals(DATE_TAKEN, cache.get(picture).getDateTaken());
+      assertEquals(DATE_TAKEN, cache.get(other).getDateTaken());
+    }
+  }
+
+  @Test
+  public void deltaIsMerged() throws IOException {
+    File cacheFile = new File(folder.getRoot(), "metadata.cache");
+    File deltaFile = new File(folder.getRoot(), "metadata.cache.0");
+    File picture = picture("a.jpg");
+    new MetadataCache(cacheFile).close();
+    long length = cacheFile.length();
+    try (MetadataCache cache = new MetadataCache(cacheFile, deltaFile)) {
+      cache.put(picture, DATE_TAKEN, null);
+    }
+    assertEquals(length, cacheFile.length());
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      assertNull(cache.get(picture));
+      cache.merge(deltaFile);
+      assertEquals(DATE_TAKEN, cache.get(picture).getDateTaken());
+    }
+    try (MetadataCache cache = new MetadataCache(cacheFile)) {
+      assertEquals(DATE_TAKEN, cache.get(picture).getDateTaken());
+    }
+  }
+
+  private File picture(String name) throws IOException {
+    File file = folder.newFile(name);
+    Files.write(file.toPath(), new byte[] {1});
+    return file;
+  }
+}
@@ -0,0 +1,175 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Suffixes handed out by the index in directories of taken names.
+ */
+public class NameIndexTest {
+  private static final String BASE_NAME = "20210304T050607";
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+  private DirectoryHandles handles;
+  private NameIndex names;
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    handles = new DirectoryHandles();
+    names = new NameIndex(handles);
+    dir = folder.newFolder("dir");
+  }
+
+  @After
+  public void tearDown() {
+    handles.close();
+  }
+
+  @Test
+  public void burstGetsSuffixesInOrder() throws IOException {
+    new File(dir, BASE_NAME + ".jpg").createNewFile();
+    new File(dir, BASE_NAME + "_2.jpg").createNewFile();
+    assertEquals(BASE_NAME + "_1.jpg", reserve("a.jpg"));
+    assertEquals(BASE_NAME + "_3.jpg", reserve("b.jpg"));
+    assertEquals(BASE_NAME + "_4.jpg", reserve("c.jpg"));
+  }
+
+  @Test
+  public void extensionsHaveTheirOwnSuffixes() throws IOException {
+    new File(dir, BASE_NAME + ".jpg").createNewFile();
+    assertEquals(BASE_NAME + "_1.jpg", reserve("a.jpg"));
+    assertEquals(BASE_NAME + ".mov", names.reserve(BASE_NAME, new File[] {new File(dir, "b.mov")},
+        new String[] {".mov"})[0]);
+  }
+
+  @Test
+  public void sidecarGetsSuffixOfPicture() throws IOException {
+    File sidecarDir = folder.newFolder("dir", "NKSC_PARAM");
+    new File(dir, BASE_NAME + ".NEF").createNewFile();
+    new File(sidecarDir, BASE_NAME + "_1.NEF.nksc").createNewFile();
+    String[] reserved = names.reserve(BASE_NAME,
+        new File[] {new File(dir, "DSC_0001.NEF"), new File(sidecarDir, "DSC_0001.NEF.nksc")},
+        new String[] {".NEF", ".NEF.nksc"});
+    assertArrayEquals(new String[] {BASE_NAME + "_2.NEF", BASE_NAME + "_2.NEF.nksc"}, reserved);
+  }
+
+  @Test
+  public void fileCreatedAfterListingIsNotHandedOut() throws IOException {
+    assertEquals(BASE_NAME + ".jpg", reserve("a.jpg"));
+    new File(dir, BASE_NAME + "_1.jpg").createNewFile();
+    assertEquals(BASE_NAME + "_2.jpg", reserve("b.jpg"));
+  }
+
+  @Test
+  public void holdersAreFilesOfLowerSuffixes() throws IOException {
+    File listed = new File(dir, BASE_NAME + ".jpg");
+    listed.createNewFile();
+    File picture = new File(dir, "a.jpg");
+    assertEquals(BASE_NAME + "_1.jpg", reserve(picture.getName()));
+    assertEquals(BASE_NAME + "_2.jpg", reserve("b.jpg"));
+    Map<File, File> holders = names.getHolders(dir, BASE_NAME, ".jpg", BASE_NAME + "_2.jpg");
+    List<File> files = new ArrayList<>(holders.keySet());
+    assertEquals(2, files.size());
+    assertEquals(listed, files.get(0));
+    assertEquals(listed, holders.get(listed));
+    // the picture has not been renamed yet
+    assertEquals(picture, holders.get(new File(dir, BASE_NAME + "_1.jpg")));
+  }
+
+  @Test
+  public void concurrentReservationsGetDistinctNames() throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    List<Future<String>> reserved = new ArrayList<>();
+    for (int i = 0; i < 800; i++) {
+      String name = "DSC_" + i + ".jpg";
+      reserved.add(threads.submit(() -> reserve(name)));
+    }
+    Set<String> distinct = new HashSet<>();
+    for (Future<String> name : reserved) {
+      assertTrue(distinct.add(name.get()));
+    }
+    threads.shutdown();
+    assertTrue(distinct.contains(BASE_NAME + "_799.jpg"));
+  }
+
+  @Test
+  public void releasedNameIsHandedOutAgain() throws IOException {
+    assertEquals(BASE_NAME + ".jpg", reserve("a.jpg"));
+    assertEquals(BASE_NAME + "_1.jpg", reserve("b.jpg"));
+    assertEquals(BASE_NAME + "_2.jpg", reserve("c.jpg"));
+    // b.jpg is a duplicate which is skipped
+    names.release(dir, BASE_NAME + "_1.jpg");
+    assertEquals(BASE_NAME + "_1.jpg", reserve("d.jpg"));
+    assertEquals(BASE_NAME + "_3.jpg", reserve("e.jpg"));
+  }
+
+  @Test
+  public void reservationOutlivesEvictionOfItsDirectory() throws IOException {
+    assertEquals(BASE_NAME + ".jpg", reserve("a.jpg"));
+    for (int i = 0; i < 100; i++) {
+      File other = folder.newFolder("other" + i);
+      String name = names.reserve(BASE_NAME, new File[] {new File(other, "a.jpg")},
+          new String[] {".jpg"})[0];
+      names.commit(other, name);
+    }
+    // not renamed yet, the name is not on the file system to be listed again
+    assertEquals(BASE_NAME + "_1.jpg", reserve("b.jpg"));
+  }
+
+  @Test
+  public void reservableNamesHaveSuffixesOfCounts() {
+    assertTrue(NameIndex.isReservable(BASE_NAME, BASE_NAME + ".jpg", ".jpg"));
+    assertTrue(NameIndex.isReservable(BASE_NAME, BASE_NAME + "_12.jpg", ".jpg"));
+    assertFalse(NameIndex.isReservable(BASE_NAME, BASE_NAME + "_0.jpg", ".jpg"));
+    assertFalse(NameIndex.isReservable(BASE_NAME, BASE_NAME + "_1a.jpg", ".jpg"));
+    assertFalse(NameIndex.isReservable(BASE_NAME, BASE_NAME + "_1.mov", ".jpg"));
+  }
+
+  private String reserve(String name) throws IOException {
+    return names.reserve(BASE_NAME, new File[] {new File(dir, name)}, new String[] {".jpg"})[0];
+  }
+}
@@ -0,0 +1,64 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Runs of the pipeline over directories of files of no picture type.
+ */
+public class PicturePipelineTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test(timeout = 10000)
+  public void filesOfNoPictureTypeAreNotConsumed() throws IOException {
+    File dir = folder.newFolder("dir");
+    for (int i = 0; i < 100; i++) {
+      Files.write(new File(dir, "file" + i + ".txt").toPath(), new byte[] {1});
+    }
+    List<Picture> pictures = new ArrayList<>();
+    new PicturePipeline(4, false, null, true, null).run(
+        new String[] {dir.getPath()}, -1, pictures::add);
+    assertTrue(pictures.isEmpty());
+  }
+
+  @Test(timeout = 10000, expected = IOException.class)
+  public void failedDiscoveryFailsRun() throws IOException {
+    // a path of a NUL character fails discovery with an unchecked exception
+    new PicturePipeline(4, false, null, true, null).run(
+        new String[] {"dir\u0000"}, -1, picture -> { });
+  }
+}
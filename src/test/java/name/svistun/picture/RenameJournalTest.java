@@ -0,0 +1,120 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Journals written batch by batch, interrupted and continued.
+ */
+public class RenameJournalTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void lastBatchIsUncommitted() throws IOException {
+    File journalFile = new File(folder.getRoot(), "journal");
+    try (RenameJournal journal = new RenameJournal(journalFile, 0)) {
+      journal.intend(file("a.jpg"), file("1.jpg"));
+      journal.intend(file("b.jpg"), file("2.jpg"));
+      journal.sync();
+      journal.commit(Collections.singleton(folder.getRoot()), 42);
+      journal.intend(file("c.jpg"), file("3.jpg"));
+      journal.sync();
+    }
+    RenameJournal.State state = RenameJournal.read(journalFile);
+    assertEquals(3, state.getRenames().size());
+    assertEquals(file("b.jpg"), state.getRenames().getFile(1));
+    assertEquals(file("2.jpg"), state.getRenames().getNewFile(1));
+    assertEquals(42, state.getPlanPosition());
+    assertEquals(journalFile.length(), state.getLength());
+    List<File[]> uncommitted = state.getUncommittedRenames();
+    assertEquals(1, uncommitted.size());
+    assertArrayEquals(new File[] {file("c.jpg"), file("3.jpg")}, uncommitted.get(0));
+  }
+
+  @Test
+  public void resumedJournalDropsPartialRecord() throws IOException {
+    File journalFile = new File(folder.getRoot(), "journal");
+    try (RenameJournal journal = new RenameJournal(journalFile, 0)) {
+      journal.intend(file("a.jpg"), file("1.jpg"));
+      journal.sync();
+      journal.commit(Collections.singleton(folder.getRoot()), -1);
+    }
+    long length = journalFile.length();
+    // a rename interrupted while its record was being written
+    try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+      out.write(new byte[] {1, 0, 42, '/'});
+    }
+    RenameJournal.State state = RenameJournal.read(journalFile);
+    assertEquals(1, state.getRenames().size());
+    assertTrue(state.getUncommittedRenames().isEmpty());
+    assertEquals(length, state.getLength());
+    assertEquals(-1, state.getPlanPosition());
+    try (RenameJournal journal = new RenameJournal(journalFile, state.getLength())) {
+      journal.intend(file("b.jpg"), file("2.jpg"));
+      journal.sync();
+      journal.commit(Collections.singleton(folder.getRoot()), -1);
+    }
+    state = RenameJournal.read(journalFile);
+    assertEquals(2, state.getRenames().size());
+    assertEquals(file("2.jpg"), state.getRenames().getNewFile(1));
+    assertTrue(state.getUncommittedRenames().isEmpty());
+  }
+
+  @Test(expected = IOException.class)
+  public void corruptedRecordFails() throws IOException {
+    File journalFile = new File(folder.getRoot(), "journal");
+    new RenameJournal(journalFile, 0).close();
+    try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+      out.write(new byte[] {9, 0, 0});
+    }
+    RenameJournal.read(journalFile);
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFileIsRejected() throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), new byte[] {'P', 'R', 'P', '3'});
+    RenameJournal.read(file);
+  }
+
+  private File file(String name) {
+    return new File(folder.getRoot(), name).getAbsoluteFile();
+  }
+}
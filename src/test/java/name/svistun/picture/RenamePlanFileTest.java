@@ -0,0 +1,146 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Plans written to a plan file and read back.
+ */
+public class RenamePlanFileTest {
+  private static final Date DATE_TAKEN = new Date(1614834367250L);
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void plansSurviveRoundTrip() throws IOException {
+    File planFile = new File(folder.getRoot(), "plan");
+    RenamePlan linked = new RenamePlan(new File(folder.getRoot(), "DSC_0001.NEF"),
+        "20210304T050607_1.NEF", new File(folder.getRoot(), "NKSC_PARAM/DSC_0001.NEF.nksc"),
+        "20210304T050607_1.NEF.nksc", DATE_TAKEN, TimeZone.getTimeZone("GMT-05:30"),
+        new File(folder.getRoot(), "20210304T050607.NEF"));
+    RenamePlan plain = new RenamePlan(new File(folder.getRoot(), "IMG_1.jpg"),
+        "20210304T050607.jpg", null, null, DATE_TAKEN);
+    write(planFile, linked, plain);
+    try (RenamePlanFile.Reader reader = new RenamePlanFile.Reader(planFile)) {
+      assertPlan(linked, reader.read());
+      assertPlan(plain, reader.read());
+      assertNull(reader.read());
+    }
+  }
+
+  @Test
+  public void readerStartsAtPosition() throws IOException {
+    File planFile = new File(folder.getRoot(), "plan");
+    RenamePlan first = new RenamePlan(new File(folder.getRoot(), "a.jpg"), "b.jpg", null, null,
+        DATE_TAKEN);
+    RenamePlan second = new RenamePlan(new File(folder.getRoot(), "c.jpg"), "d.jpg", null, null,
+        DATE_TAKEN);
+    write(planFile, first, second);
+    long position;
+    try (RenamePlanFile.Reader reader = new RenamePlanFile.Reader(planFile)) {
+      reader.read();
+      position = reader.getPosition();
+    }
+    try (RenamePlanFile.Reader reader = new RenamePlanFile.Reader(planFile, position)) {
+      assertPlan(second, reader.read());
+      assertNull(reader.read());
+    }
+  }
+
+  @Test
+  public void readsPlansOfFirstVersion() throws IOException {
+    File planFile = new File(folder.getRoot(), "plan");
+    File picture = new File(folder.getRoot(), "a.jpg");
+    try (DataOutputStream out = new DataOutputStream(new FileOutputStream(planFile))) {
+      out.writeInt(0x50525031);
+      out.writeUTF(picture.getAbsolutePath());
+      out.writeUTF("b.jpg");
+      out.writeUTF("");
+      out.writeUTF("");
+      out.writeLong(DATE_TAKEN.getTime());
+    }
+    try (RenamePlanFile.Reader reader = new RenamePlanFile.Reader(planFile)) {
+      assertPlan(new RenamePlan(picture, "b.jpg", null, null, DATE_TAKEN), reader.read());
+      assertNull(reader.read());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedPlanFails() throws IOException {
+    File planFile = new File(folder.getRoot(), "plan");
+    write(planFile, new RenamePlan(new File(folder.getRoot(), "a.jpg"), "b.jpg", null, null,
+        DATE_TAKEN));
+    try (RandomAccessFile file = new RandomAccessFile(planFile, "rw")) {
+      file.setLength(file.length() - 4);
+    }
+    try (RenamePlanFile.Reader reader = new RenamePlanFile.Reader(planFile)) {
+      reader.read();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void otherFileIsRejected() throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), new byte[] {'P', 'R', 'J', '1'});
+    new RenamePlanFile.Reader(file).close();
+  }
+
+  private static void write(File planFile, RenamePlan... plans) throws IOException {
+    try (RenamePlanFile.Writer writer = new RenamePlanFile.Writer(planFile)) {
+      for (RenamePlan plan : plans) {
+        writer.write(plan);
+      }
+    }
+  }
+
+  private static void assertPlan(RenamePlan expected, RenamePlan actual) {
+    assertEquals(expected.getPictureFile().getAbsoluteFile(), actual.getPictureFile());
+    assertEquals(expected.getNewPictureFile().getAbsoluteFile(),
+        actual.getNewPictureFile().getAbsoluteFile());
+    assertEquals(null == expected.getParamFile() ? null : expected.getParamFile().getAbsoluteFile(),
+        actual.getParamFile());
+    assertEquals(null == expected.getNewParamFile()
+        ? null
+        : expected.getNewParamFile().getAbsoluteFile(), actual.getNewParamFile());
+    assertEquals(expected.getDateTaken(), actual.getDateTaken());
+    assertEquals(expected.getTimeZone(), actual.getTimeZone());
+    assertEquals(expected.getOriginal(), actual.getOriginal());
+  }
+}
@@ -0,0 +1,77 @@
+package name.svistun.picture;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * Renames kept by the store and read back as files.
+ */
+public class RenameStoreTest {
+  private static final File DIR = new File("photos", "2021").getAbsoluteFile();
+  private static final File OTHER_DIR = new File("photos", "2020").getAbsoluteFile();
+
+  @Test
+  public void renamesAreReadBack() {
+    RenameStore store = new RenameStore();
+    store.add(new File(DIR, "IMG_1.jpg").getPath(),
+        new File(DIR, "20210304T050607.jpg").getPath());
+    store.add(new File(DIR, "\u0444\u043e\u0442\u043e.jpg").getPath(),
+        new File(DIR, "20210304T050607_1.jpg").getPath());
+    store.add(new File(DIR, "a.jpg").getPath(), new File(OTHER_DIR, "b.jpg").getPath());
+    assertEquals(3, store.size());
+    assertEquals(new File(DIR, "IMG_1.jpg"), store.getFile(0));
+    assertEquals(new File(DIR, "20210304T050607.jpg"), store.getNewFile(0));
+    assertEquals(new File(DIR, "\u0444\u043e\u0442\u043e.jpg"), store.getFile(1));
+    assertEquals(new File(DIR, "20210304T050607_1.jpg"), store.getNewFile(1));
+    assertEquals(new File(DIR, "a.jpg"), store.getFile(2));
+    assertEquals(new File(OTHER_DIR, "b.jpg"), store.getNewFile(2));
+  }
+
+  @Test
+  public void storeGrows() {
+    RenameStore store = new RenameStore();
+    for (int i = 0; i < 5000; i++) {
+      File dir = new File(DIR, Integer.toString(i % 7));
+      store.add(new File(dir, "DSC_" + i + ".NEF").getPath(),
+          new File(dir, "20210304T050607_" + i + ".NEF").getPath());
+    }
+    assertEquals(5000, store.size());
+    assertEquals(new File(new File(DIR, "1"), "DSC_4999.NEF"), store.getFile(4999));
+    assertEquals(new File(new File(DIR, "2"), "20210304T050607_1234.NEF"),
+        store.getNewFile(1234));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void indexOutOfRenamesFails() {
+    RenameStore store = new RenameStore();
+    store.add(new File(DIR, "a.jpg").getPath(), new File(DIR, "b.jpg").getPath());
+    store.getFile(1);
+  }
+}
@@ -0,0 +1,184 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Dates of small JPEG and TIFF files written byte by byte: a TIFF header,
+ * IFD0 pointing to the Exif IFD and the Exif IFD with the date tags.
+ */
+public class ExifDateReaderTest {
+  // 2021-03-04 05:06:07 as of GMT
+  private static final long DATE_TAKEN = 1614834367000L;
+  private static final String DATE = "2021:03:04 05:06:07";
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsJpegWithSubSecondsAndOffset() throws IOException {
+    File file = write(jpeg(tiff(ByteOrder.BIG_ENDIAN, DATE, "25", "+02:00"), false));
+    ExifDateReader.DateTaken dateTaken = ExifDateReader.readDateTimeOriginal(file);
+    assertEquals(DATE_TAKEN + 250, dateTaken.getDate().getTime());
+    assertEquals(TimeZone.getTimeZone("GMT+02:00").getRawOffset(),
+        dateTaken.getTimeZone().getRawOffset());
+  }
+
+  @Test
+  public void readsLittleEndianTiff() throws IOException {
+    File file = write(tiff(ByteOrder.LITTLE_ENDIAN, DATE, null, null));
+    ExifDateReader.DateTaken dateTaken = ExifDateReader.readDateTimeOriginal(file);
+    assertEquals(DATE_TAKEN, dateTaken.getDate().getTime());
+    assertNull(dateTaken.getTimeZone());
+  }
+
+  @Test
+  public void skipsSegmentsBeforeExif() throws IOException {
+    File file = write(jpeg(tiff(ByteOrder.LITTLE_ENDIAN, DATE, "123456", null), true));
+    assertEquals(DATE_TAKEN + 123,
+        ExifDateReader.readDateTimeOriginal(file).getDate().getTime());
+  }
+
+  @Test
+  public void givesUpOnInvalidDate() throws IOException {
+    File file = write(jpeg(tiff(ByteOrder.BIG_ENDIAN, "0000:00:00 00:00:xx", null, null), false));
+    assertNull(ExifDateReader.readDateTimeOriginal(file));
+  }
+
+  @Test
+  public void givesUpOnOtherContent() throws IOException {
+    assertNull(ExifDateReader.readDateTimeOriginal(write(
+        "<?xml version=\"1.0\"?>".getBytes(StandardCharsets.US_ASCII))));
+  }
+
+  @Test(expected = EOFException.class)
+  public void failsOnTruncatedFile() throws IOException {
+    byte[] tiff = tiff(ByteOrder.BIG_ENDIAN, DATE, null, null);
+    ExifDateReader.readDateTimeOriginal(write(Arrays.copyOf(tiff, 30)));
+  }
+
+  @Test
+  public void parsesSubSeconds() {
+    assertEquals(0, ExifDateReader.parseSubSecond(null));
+    assertEquals(500, ExifDateReader.parseSubSecond("5"));
+    assertEquals(42, ExifDateReader.parseSubSecond("042 "));
+    assertEquals(0, ExifDateReader.parseSubSecond("1.5"));
+  }
+
+  @Test
+  public void parsesOffsets() {
+    assertEquals(-(5 * 60 + 30) * 60 * 1000,
+        ExifDateReader.parseOffset("-05:30").getRawOffset());
+    assertNull(ExifDateReader.parseOffset("+2:00"));
+    assertNull(ExifDateReader.parseOffset(null));
+  }
+
+  private File write(byte[] content) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  /**
+  * @return a TIFF of IFD0 with the Exif IFD pointer only and the Exif IFD
+  *     with the date tags given, null tags are left out.
+  */
+  private static byte[] tiff(ByteOrder order, String date, String subSecond, String offset) {
+    int entries = 1 + (null == subSecond ? 0 : 1) + (null == offset ? 0 : 1);
+    int exifIfd = 8 + 2 + 12 + 4;
+    int data = exifIfd + 2 + 12 * entries + 4;
+    ByteBuffer buffer = ByteBuffer.allocate(data + 64).order(order);
+    buffer.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+    buffer.put(buffer.get(0)).putShort((short) 42).putInt(8);
+    // IFD0: the Exif IFD pointer, a LONG
+    buffer.putShort((short) 1);
+    buffer.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(exifIfd);
+    buffer.putInt(0);
+    buffer.putShort((short) entries);
+    data = entry(buffer, 0x9003, date, data);
+    if (null != offset) {
+      data = entry(buffer, 0x9011, offset, data);
+    }
+    if (null != subSecond) {
+      data = entry(buffer, 0x9291, subSecond, data);
+    }
+    buffer.putInt(0);
+    return Arrays.copyOf(buffer.array(), data);
+  }
+
+  /**
+  * Puts an ASCII entry, a value of more than four bytes goes to the data.
+  *
+  * @return a position of the data after the value.
+  */
+  private static int entry(ByteBuffer buffer, int tag, String value, int data) {
+    byte[] ascii = (value + "\0").getBytes(StandardCharsets.US_ASCII);
+    buffer.putShort((short) tag).putShort((short) 2).putInt(ascii.length);
+    if (ascii.length <= 4) {
+      buffer.put(Arrays.copyOf(ascii, 4));
+      return data;
+    }
+    buffer.putInt(data);
+    for (int i = 0; i < ascii.length; i++) {
+      buffer.put(data + i, ascii[i]);
+    }
+    return data + ascii.length;
+  }
+
+  /**
+  * @param app0 true to put a JFIF APP0 segment before the Exif one.
+  */
+  private static byte[] jpeg(byte[] tiff, boolean app0) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(new byte[] {(byte) 0xFF, (byte) 0xD8});
+    if (app0) {
+      out.write(new byte[] {(byte) 0xFF, (byte) 0xE0, 0, 16});
+      out.write("JFIF\0".getBytes(StandardCharsets.US_ASCII));
+      out.write(new byte[9]);
+    }
+    int length = 2 + 6 + tiff.length;
+    out.write(new byte[] {(byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length});
+    out.write("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+    out.write(tiff);
+    out.write(new byte[] {(byte) 0xFF, (byte) 0xDA, 0, 2, (byte) 0xFF, (byte) 0xD9});
+    return out.toByteArray();
+  }
+}
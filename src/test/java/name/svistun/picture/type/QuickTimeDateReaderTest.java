@@ -0,0 +1,139 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Creation times of small movies written box by box.
+ */
+public class QuickTimeDateReaderTest {
+  private static final long EPOCH_OFFSET = 2082844800L;
+  // 2021-03-04 05:06:07 as of GMT
+  private static final long DATE_TAKEN = 1614834367000L;
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void readsMvhdAfterMediaData() throws IOException {
+    File file = write(box("ftyp", "isom".getBytes(StandardCharsets.US_ASCII)),
+        box("mdat", new byte[1000]),
+        box("moov", box("mvhd", mvhd(0, DATE_TAKEN / 1000 + EPOCH_OFFSET))));
+    assertEquals(DATE_TAKEN, QuickTimeDateReader.readCreationTime(file).getTime());
+  }
+
+  @Test
+  public void readsMvhdOfVersion1() throws IOException {
+    File file = write(box("moov", box("trak", new byte[16]),
+        box("mvhd", mvhd(1, DATE_TAKEN / 1000 + EPOCH_OFFSET))));
+    assertEquals(DATE_TAKEN, QuickTimeDateReader.readCreationTime(file).getTime());
+  }
+
+  @Test
+  public void skipsBoxOfLargeSize() throws IOException {
+    byte[] content = new byte[100];
+    ByteBuffer mdat = ByteBuffer.allocate(16 + content.length);
+    mdat.putInt(1).put("mdat".getBytes(StandardCharsets.US_ASCII)).putLong(mdat.capacity());
+    File file = write(mdat.array(),
+        box("moov", box("mvhd", mvhd(0, DATE_TAKEN / 1000 + EPOCH_OFFSET))));
+    assertEquals(DATE_TAKEN, QuickTimeDateReader.readCreationTime(file).getTime());
+  }
+
+  @Test
+  public void readsLastBoxOfZeroSize() throws IOException {
+    byte[] moov = box("moov", box("mvhd", mvhd(0, DATE_TAKEN / 1000 + EPOCH_OFFSET)));
+    ByteBuffer.wrap(moov).putInt(0, 0);
+    File file = write(box("ftyp", new byte[4]), moov);
+    assertEquals(DATE_TAKEN, QuickTimeDateReader.readCreationTime(file).getTime());
+  }
+
+  @Test
+  public void givesUpWithoutMoov() throws IOException {
+    assertNull(QuickTimeDateReader.readCreationTime(write(box("ftyp", new byte[4]),
+        box("mdat", new byte[100]))));
+  }
+
+  @Test
+  public void givesUpOnUnsetCreationTime() throws IOException {
+    assertNull(QuickTimeDateReader.readCreationTime(write(box("moov",
+        box("mvhd", mvhd(0, 0))))));
+  }
+
+  @Test
+  public void givesUpOnTruncatedBox() throws IOException {
+    byte[] mdat = box("mdat", new byte[100]);
+    ByteBuffer.wrap(mdat).putInt(0, 1000);
+    assertNull(QuickTimeDateReader.readCreationTime(write(mdat)));
+  }
+
+  private File write(byte[]... boxes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] box : boxes) {
+      out.write(box);
+    }
+    File file = folder.newFile();
+    Files.write(file.toPath(), out.toByteArray());
+    return file;
+  }
+
+  private static byte[] box(String type, byte[]... children) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    for (byte[] child : children) {
+      content.write(child);
+    }
+    return ByteBuffer.allocate(8 + content.size())
+        .putInt(8 + content.size())
+        .put(type.getBytes(StandardCharsets.US_ASCII))
+        .put(content.toByteArray())
+        .array();
+  }
+
+  /**
+  * @return the start of mvhd content: a version, flags and the creation time
+  *     of 4 or 8 bytes, the rest of the box is not read.
+  */
+  private static byte[] mvhd(int version, long creationTime) {
+    ByteBuffer content = ByteBuffer.allocate(version == 0 ? 100 : 112);
+    content.put((byte) version).put(new byte[3]);
+    if (version == 0) {
+      content.putInt((int) creationTime);
+    } else {
+      content.putLong(creationTime);
+    }
+    return content.array();
+  }
+}
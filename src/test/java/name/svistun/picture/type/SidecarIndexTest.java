@@ -0,0 +1,91 @@
+package name.svistun.picture.type;
+
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Aleksey Svistunov
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Sidecars of the file name and of the base name, the latter shared by a pair
+ * of a raw picture and a JPEG one.
+ */
+public class SidecarIndexTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void configure() {
+    SidecarIndex.configure(SidecarIndex.DEFAULT_SIDECARS);
+  }
+
+  @Test
+  public void findsSidecarOfFileName() throws IOException {
+    folder.newFile("DSC_0001.NEF");
+    folder.newFolder("NKSC_PARAM");
+    File nksc = folder.newFile("NKSC_PARAM/DSC_0001.NEF.nksc");
+    SidecarIndex.Sidecar sidecar = SidecarIndex.forDirectory(folder.getRoot())
+        .find("DSC_0001.NEF", "DSC_0001");
+    assertEquals(nksc, sidecar.getFile());
+    assertEquals("nksc", sidecar.getExt());
+  }
+
+  @Test
+  public void givesSidecarOfBaseNameToOnePictureOfPair() throws IOException {
+    folder.newFile("DSC_0001.NEF");
+    folder.newFile("DSC_0001.JPG");
+    File xmp = folder.newFile("DSC_0001.xmp");
+    SidecarIndex index = SidecarIndex.forDirectory(folder.getRoot());
+    assertEquals(xmp, index.find("DSC_0001.JPG", "DSC_0001").getFile());
+    assertNull(index.find("DSC_0001.NEF", "DSC_0001"));
+  }
+
+  @Test
+  public void givesSidecarOfBaseNameToSinglePicture() throws IOException {
+    folder.newFile("DSC_0001.NEF");
+    folder.newFile("DSC_0001.MOV");
+    File xmp = folder.newFile("DSC_0001.xmp");
+    assertEquals(xmp, SidecarIndex.forDirectory(folder.getRoot())
+        .find("DSC_0001.NEF", "DSC_0001").getFile());
+  }
+
+  @Test
+  public void prefersSidecarOfFileNameInPair() throws IOException {
+    folder.newFile("DSC_0001.NEF");
+    folder.newFile("DSC_0001.JPG");
+    File nefXmp = folder.newFile("DSC_0001.NEF.xmp");
+    File xmp = folder.newFile("DSC_0001.xmp");
+    SidecarIndex index = SidecarIndex.forDirectory(folder.getRoot());
+    assertEquals(nefXmp, index.find("DSC_0001.NEF", "DSC_0001").getFile());
+    assertEquals(xmp, index.find("DSC_0001.JPG", "DSC_0001").getFile());
+  }
+}